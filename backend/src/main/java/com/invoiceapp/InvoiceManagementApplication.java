@@ -1,5 +1,7 @@
 package com.invoiceapp;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -10,6 +12,8 @@ import org.springframework.beans.factory.annotation.Value;
 
 @SpringBootApplication
 public class InvoiceManagementApplication {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceManagementApplication.class);
 
     @Value("${spring.mail.host:NOT SET}")
     private String mailHost;
@@ -27,11 +31,8 @@ public class InvoiceManagementApplication {
     @Bean
     public CommandLineRunner init() {
         return args -> {
-            System.out.println("\n======= EMAIL CONFIGURATION =======");
-            System.out.println("Mail Host: " + mailHost);
-            System.out.println("Mail Port: " + mailPort);
-            System.out.println("Mail Username: " + (mailUsername.contains("NOT SET") ? "NOT SET" : mailUsername.substring(0, Math.min(10, mailUsername.length())) + "..."));
-            System.out.println("===================================\n");
+            logger.info("Email configuration: host={}, port={}, username={}", mailHost, mailPort,
+                    mailUsername.contains("NOT SET") ? "NOT SET" : mailUsername.substring(0, Math.min(10, mailUsername.length())) + "...");
         };
     }
 
@@ -52,7 +53,7 @@ public class InvoiceManagementApplication {
                     "http://localhost:3001",
                     "http://localhost:3000"
                 )
-                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
                 .allowCredentials(true)
                 .maxAge(3600);
@@ -1,7 +1,10 @@
 package com.invoiceapp.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -18,7 +21,92 @@ public class AsyncConfig {
         executor.setMaxPoolSize(5);
         executor.setQueueCapacity(500);
         executor.setThreadNamePrefix("EmailSender-");
+        executor.setTaskDecorator(contextDecorator());
         executor.initialize();
         return executor;
     }
+    
+    /**
+     * CPU-bound PDF rendering, sized to the cores with a bounded queue so a burst of
+     * downloads cannot take over the request threads. Admission is checked up front by
+     * PdfRenderService; anything past the queue is rejected rather than queued.
+     */
+    @Bean(name = "pdfRenderExecutor")
+    public ThreadPoolTaskExecutor pdfRenderExecutor(
+            @Value("${pdf.render.threads:0}") int threads,
+            @Value("${pdf.render.queue-capacity:50}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("PdfRender-");
+        executor.setTaskDecorator(contextDecorator());
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * bcrypt hashing for login and signup. Deliberately small so a login burst uses at most
+     * these threads' worth of CPU; a full queue rejects immediately and the caller answers 503.
+     */
+    @Bean(name = "authExecutor")
+    public ThreadPoolTaskExecutor authExecutor(
+            @Value("${auth.hash.threads:0}") int threads,
+            @Value("${auth.hash.queue-capacity:20}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("AuthHash-");
+        executor.setTaskDecorator(contextDecorator());
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Background image work (logo storage and renditions). Never on the request path,
+     * so a small pool is enough; callers fall back to a plain synchronous store when it is full.
+     */
+    @Bean(name = "imageExecutor")
+    public ThreadPoolTaskExecutor imageExecutor(
+            @Value("${image.processing.threads:2}") int threads,
+            @Value("${image.processing.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ImageProc-");
+        executor.setTaskDecorator(contextDecorator());
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Writes invoice events to open event streams. Each stream has at most one drain task
+     * queued or running (see InvoiceEventStreamService), so the queue is bounded by the
+     * number of open streams and is left unbounded here.
+     * No context decorator: the sends outlive the request that caused the event.
+     */
+    @Bean(name = "invoiceEventExecutor")
+    public ThreadPoolTaskExecutor invoiceEventExecutor(
+            @Value("${invoice.events.sender-threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("InvoiceEvents-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Carries the caller's MDC and current trace span onto pool threads, so @Async email
+     * work and PDF renders show up as children of the request that started them.
+     */
+    private static TaskDecorator contextDecorator() {
+        TaskDecorator mdc = new MdcTaskDecorator();
+        TaskDecorator tracing = new ContextPropagatingTaskDecorator();
+        return runnable -> mdc.decorate(tracing.decorate(runnable));
+    }
 }
@@ -0,0 +1,61 @@
+package com.invoiceapp.config;
+
+import com.invoiceapp.entity.CompanyInfo;
+import com.invoiceapp.service.CompanyInfoService;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+
+/**
+ * Cross-node invalidation for the CompanyInfo cache. Every node watches the company_info
+ * collection and evicts its own entry for any changed document.
+ * Change streams need a replica set, so this is off unless company-info.cache.change-stream.enabled=true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "company-info.cache.change-stream.enabled", havingValue = "true")
+public class CompanyInfoChangeStreamConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompanyInfoChangeStreamConfig.class);
+
+    @Bean
+    public MessageListenerContainer companyInfoChangeListenerContainer(MongoTemplate mongoTemplate,
+                                                                       CompanyInfoService companyInfoService) {
+        MessageListenerContainer container = new DefaultMessageListenerContainer(mongoTemplate);
+        ChangeStreamRequest<CompanyInfo> request = ChangeStreamRequest.builder(
+                        (Message<ChangeStreamDocument<Document>, CompanyInfo> message) -> {
+                            CompanyInfo changed = message.getBody();
+                            if (changed != null && changed.getUserId() != null) {
+                                companyInfoService.evict(changed.getUserId());
+                                return;
+                            }
+                            // Deletes carry no document, only its key
+                            ChangeStreamDocument<Document> raw = message.getRaw();
+                            BsonValue id = raw != null && raw.getDocumentKey() != null
+                                    ? raw.getDocumentKey().get("_id") : null;
+                            if (id != null && id.isObjectId()) {
+                                companyInfoService.evictById(id.asObjectId().getValue().toHexString());
+                            } else if (id != null && id.isString()) {
+                                companyInfoService.evictById(id.asString().getValue());
+                            }
+                        })
+                .collection("company_info")
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build();
+        container.register(request, CompanyInfo.class, e -> logger.warn("CompanyInfo change stream error: {}", e.getMessage()));
+        // Not auto-started by the context; the registered stream only opens once it runs
+        container.start();
+        logger.info("Watching company_info for cache invalidation");
+        return container;
+    }
+}
@@ -37,7 +37,8 @@ public class CustomCorsFilter implements Filter {
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, PATCH");
         response.setHeader("Access-Control-Max-Age", "3600");
         response.setHeader("Access-Control-Allow-Headers", 
-            "Origin, X-Requested-With, Content-Type, Accept, Authorization, Cache-Control");
+            "Origin, X-Requested-With, Content-Type, Accept, Authorization, Cache-Control, Idempotency-Key, X-Request-Id");
+        response.setHeader("Access-Control-Expose-Headers", "X-Request-Id");
 
         // Handle preflight requests
         if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
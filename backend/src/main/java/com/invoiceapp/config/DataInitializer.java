@@ -2,6 +2,8 @@ package com.invoiceapp.config;
 
 import com.invoiceapp.entity.User;
 import com.invoiceapp.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -20,6 +22,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class DataInitializer implements CommandLineRunner {
     
+    private static final Logger logger = LoggerFactory.getLogger(DataInitializer.class);
+    
     @Autowired
     private UserRepository userRepository;
     
@@ -35,11 +39,7 @@ public class DataInitializer implements CommandLineRunner {
             testUser.setName("Admin User");
             
             userRepository.save(testUser);
-            System.out.println("=========================================");
-            System.out.println("Test user created:");
-            System.out.println("Email: admin@invoiceapp.com");
-            System.out.println("Password: admin123");
-            System.out.println("=========================================");
+            logger.info("Test user created: admin@invoiceapp.com / admin123");
         }
     }
 }
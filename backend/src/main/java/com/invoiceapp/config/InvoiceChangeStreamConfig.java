@@ -0,0 +1,35 @@
+package com.invoiceapp.config;
+
+import com.invoiceapp.service.InvoiceChangeStreamListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+
+/**
+ * Source of the invoice event feed on replica sets: every node watches the invoices
+ * collection and publishes the changes to its own subscribers (see InvoiceEventPublisher).
+ * Off unless invoice.events.change-stream.enabled=true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "invoice.events.change-stream.enabled", havingValue = "true")
+public class InvoiceChangeStreamConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceChangeStreamConfig.class);
+
+    @Bean
+    public MessageListenerContainer invoiceChangeListenerContainer(MongoTemplate mongoTemplate,
+                                                                   InvoiceChangeStreamListener listener) {
+        MessageListenerContainer container = new DefaultMessageListenerContainer(mongoTemplate);
+        // Not auto-started by the context (isAutoStartup is false); until it runs, registered
+        // streams are only queued. The context still stops it on shutdown.
+        container.start();
+        listener.subscribe(container);
+        logger.info("Watching invoices for the invoice event feed");
+        return container;
+    }
+}
@@ -15,10 +15,14 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
+    private static final List<SimpleGrantedAuthority> USER_AUTHORITIES =
+            Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+    
     @Autowired
     private JwtService jwtService;
     
@@ -33,23 +37,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         
-        try {
-            final String token = authHeader.substring(7);
-            final String userId = jwtService.extractUserId(token);
-            
-            if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (!jwtService.isTokenExpired(token)) {
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userId,
-                            null,
-                            Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))
-                    );
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
-            }
-        } catch (Exception e) {
-            // Token is invalid, continue without authentication
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            // An invalid or expired token simply leaves the request unauthenticated
+            jwtService.verify(authHeader.substring(7)).ifPresent(verified -> {
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        verified.getUserId(),
+                        null,
+                        USER_AUTHORITIES
+                );
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            });
         }
         
         filterChain.doFilter(request, response);
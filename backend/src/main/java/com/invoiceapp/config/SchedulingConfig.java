@@ -0,0 +1,29 @@
+package com.invoiceapp.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * Enables @Scheduled background jobs (upload retention). They get a scheduler thread of
+ * their own: the retention sweep paces its deletes with sleeps, and must not hold up the
+ * SSE heartbeat or change-stream checkpoints, which run on Spring Boot's task scheduler
+ * (sized by spring.task.scheduling.pool.size).
+ * The scheduler is deliberately not a bean, so Boot's auto-configured one stays in place.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig implements SchedulingConfigurer {
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("Scheduled-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        registrar.setTaskScheduler(scheduler);
+    }
+}
@@ -1,5 +1,7 @@
 package com.invoiceapp.config;
 
+import com.invoiceapp.service.SignedUrlService;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,6 +10,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
@@ -21,8 +24,16 @@ public class SecurityConfig {
         http
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
+                // Re-dispatch of an async response (event streams, PDF streaming) that was authorized on entry
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
+                // Generated PDFs are only reachable through signed links, never by their plain path
+                // (matched on the path alone, so an appended query string cannot slip past)
+                .requestMatchers(new AntPathRequestMatcher("/uploads/**/*.pdf", null, false)).denyAll()
                 .requestMatchers("/uploads/**").permitAll() // Allow public access to uploaded files
+                .requestMatchers(SignedUrlService.PATH_PREFIX + "**").permitAll() // Checked by the link signature
+                .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll() // Probes and scraping
+                .requestMatchers("/api/webhooks/**").permitAll() // Checked against the webhook token
                 .anyRequest().authenticated()
             )
             .sessionManagement(session -> session
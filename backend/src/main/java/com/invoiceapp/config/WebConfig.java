@@ -1,8 +1,19 @@
 package com.invoiceapp.config;
 
+import com.invoiceapp.controller.UploadsController;
+import com.invoiceapp.service.PdfRenderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.resource.PathResourceResolver;
@@ -10,15 +21,48 @@ import org.springframework.web.servlet.resource.PathResourceResolver;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.concurrent.Callable;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     
+    private static final Logger logger = LoggerFactory.getLogger(WebConfig.class);
+    
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
     
+    @Value("${storage.backend:local}")
+    private String storageBackend;
+    
+    @Autowired
+    @Qualifier("pdfRenderExecutor")
+    private ThreadPoolTaskExecutor pdfRenderExecutor;
+    
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // StreamingResponseBody is only used for PDF downloads, so async MVC work runs on the
+        // bounded render pool instead of an unbounded SimpleAsyncTaskExecutor
+        configurer.setTaskExecutor(pdfRenderExecutor);
+        // A body rejected by the pool or timed out before it ran never reaches its own finally;
+        // afterCompletion runs in every case, and the permit only releases once
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                if (request.getAttribute(PdfRenderService.PERMIT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                        instanceof Runnable permit) {
+                    permit.run();
+                }
+            }
+        });
+    }
+    
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        if (!"local".equals(storageBackend)) {
+            // Files are not on this node's disk; UploadsController serves /uploads from the backend
+            return;
+        }
+        
         // Get absolute path to uploads directory
         String absolutePath = Paths.get(uploadDir).toAbsolutePath().normalize().toString();
         
@@ -35,11 +79,21 @@ public class WebConfig implements WebMvcConfigurer {
         }
         
         // Log the resource location for debugging
-        System.out.println("Serving static resources from: " + resourceLocation);
+        logger.info("Serving static resources from: {}", resourceLocation);
         
         registry.addResourceHandler("/uploads/**")
                 .addResourceLocations(resourceLocation)
-                .setCachePeriod(3600); // Cache for 1 hour
+                .setCachePeriod(3600) // Cache for 1 hour
+                .resourceChain(false)
+                .addResolver(new PathResourceResolver() {
+                    @Override
+                    protected Resource getResource(String resourcePath, Resource location) throws IOException {
+                        if (UploadsController.isSignedOnly(resourcePath)) {
+                            return null;
+                        }
+                        return super.getResource(resourcePath, location);
+                    }
+                });
     }
 }
 
@@ -3,8 +3,14 @@ package com.invoiceapp.controller;
 import com.invoiceapp.dto.*;
 import com.invoiceapp.service.AuthService;
 import com.invoiceapp.service.JwtService;
+import com.invoiceapp.service.LoginThrottleService;
+import com.invoiceapp.service.PasswordHashingService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -14,6 +20,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -30,36 +39,68 @@ import java.util.Map;
         methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS})
 public class AuthController {
     
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+    
     @Autowired
     private AuthService authService;
     
     @Autowired
     private JwtService jwtService;
     
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+    
+    /**
+     * The password check runs on the auth executor; the request thread is released while it runs.
+     */
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<ApiResponse<LoginResponse>>> login(@Valid @RequestBody LoginRequest loginRequest,
+                                                                               HttpServletRequest request) {
+        // Additional validation
+        if (loginRequest.getEmail() == null || loginRequest.getEmail().trim().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error("Validation failed", "Email is required")));
+        }
+        if (loginRequest.getPassword() == null || loginRequest.getPassword().trim().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error("Validation failed", "Password is required")));
+        }
+        
+        CompletableFuture<LoginResponse> login;
         try {
-            // Additional validation
-            if (loginRequest.getEmail() == null || loginRequest.getEmail().trim().isEmpty()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(ApiResponse.error("Validation failed", "Email is required"));
-            }
-            if (loginRequest.getPassword() == null || loginRequest.getPassword().trim().isEmpty()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(ApiResponse.error("Validation failed", "Password is required"));
-            }
-            
-            LoginResponse response = authService.login(loginRequest);
-            return ResponseEntity.ok(ApiResponse.success("Login successful", response));
-        } catch (IllegalArgumentException e) {
+            login = authService.login(loginRequest, request.getRemoteAddr());
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(loginErrorResponse(e));
+        }
+        return login
+                .thenApply(response -> ResponseEntity.ok(ApiResponse.success("Login successful", response)))
+                .exceptionally(ex -> loginErrorResponse(ex instanceof CompletionException && ex.getCause() != null
+                        ? ex.getCause() : ex));
+    }
+    
+    private ResponseEntity<ApiResponse<LoginResponse>> loginErrorResponse(Throwable e) {
+        if (e instanceof IllegalArgumentException) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(ApiResponse.error("Authentication failed", e.getMessage()));
-        } catch (Exception e) {
-            System.out.println("Login error: " + e.getClass().getName() + ": " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("Login failed", e.getMessage()));
         }
+        if (e instanceof LoginThrottleService.ThrottledException throttled) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(throttled.getRetryAfterSeconds()))
+                    .body(ApiResponse.error("Too many attempts", e.getMessage()));
+        }
+        if (e instanceof RejectedExecutionException) {
+            logger.warn("Login rejected, auth executor saturated");
+            return authBusyResponse();
+        }
+        logger.error("Login error: {}", e.getMessage(), e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error("Login failed", e.getMessage()));
+    }
+    
+    private <T> ResponseEntity<ApiResponse<T>> authBusyResponse() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(passwordHashingService.getRetryAfterSeconds()))
+                .body(ApiResponse.error("Service busy", "Authentication is at capacity, please retry shortly"));
     }
     
     @ExceptionHandler(MethodArgumentNotValidException.class)
@@ -92,12 +133,11 @@ public class AuthController {
             @RequestParam(value = "branchCode", required = false) String branchCode) {
         try {
             // Log received parameters for debugging (without sensitive data)
-            System.out.println("Signup request received:");
-            System.out.println("Email: " + (email != null && !email.isEmpty() ? email.substring(0, Math.min(3, email.length())) + "***" : "null/empty"));
-            System.out.println("Name: " + (name != null ? name : "null"));
-            System.out.println("CompanyName: " + (companyName != null ? companyName : "null"));
-            System.out.println("BankName: " + (bankName != null ? bankName : "null"));
-            System.out.println("Has logo: " + (companyLogo != null && !companyLogo.isEmpty()));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Signup request received: email={}, name={}, companyName={}, bankName={}, hasLogo={}",
+                        email != null && !email.isEmpty() ? email.substring(0, Math.min(3, email.length())) + "***" : "null/empty",
+                        name, companyName, bankName, companyLogo != null && !companyLogo.isEmpty());
+            }
             
             // Collect all validation errors
             java.util.List<String> validationErrors = new java.util.ArrayList<>();
@@ -134,7 +174,7 @@ public class AuthController {
             // Return all validation errors at once
             if (!validationErrors.isEmpty()) {
                 String errorMessage = String.join(", ", validationErrors);
-                System.err.println("Validation errors: " + errorMessage);
+                logger.warn("Signup validation errors: {}", errorMessage);
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(ApiResponse.error("Validation failed", errorMessage));
             }
@@ -164,14 +204,15 @@ public class AuthController {
             SignupResponse response = authService.signup(signupRequest);
             return ResponseEntity.status(HttpStatus.CREATED)
                     .body(ApiResponse.success("Signup successful", response));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Signup rejected, auth executor saturated");
+            return authBusyResponse();
         } catch (IllegalArgumentException e) {
-            System.err.println("Signup validation error: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("Signup validation error: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(ApiResponse.error("Signup failed", e.getMessage()));
         } catch (Exception e) {
-            System.err.println("Signup error: " + e.getMessage());
-            e.printStackTrace(); // Log the full error for debugging
+            logger.error("Signup error: {}", e.getMessage(), e);
             String errorMsg = e.getMessage() != null ? e.getMessage() : "An unexpected error occurred";
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(ApiResponse.error("Signup failed", errorMsg));
@@ -199,12 +240,13 @@ public class AuthController {
             
             String token = authHeader.substring(7); // Remove "Bearer " prefix
             
-            // Extract userId from token
-            String userId = jwtService.extractUserId(token);
-            if (userId == null || jwtService.isTokenExpired(token)) {
+            // Verify token and extract userId
+            java.util.Optional<JwtService.VerifiedToken> verified = jwtService.verify(token);
+            if (verified.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(ApiResponse.error("Unauthorized", "Invalid or expired token"));
             }
+            String userId = verified.get().getUserId();
             
             // Find company info by userId
             java.util.Optional<com.invoiceapp.entity.CompanyInfo> companyInfoOpt = 
@@ -223,6 +265,9 @@ public class AuthController {
             companyInfoDTO.setCompanyName(companyInfo.getCompanyName());
             companyInfoDTO.setCompanyAddress(companyInfo.getCompanyAddress());
             companyInfoDTO.setCompanyLogoUrl(companyInfo.getCompanyLogoUrl());
+            companyInfoDTO.setCompanyLogoThumbnailUrl(companyInfo.getCompanyLogoThumbnailUrl());
+            companyInfoDTO.setCompanyLogoPdfUrl(companyInfo.getCompanyLogoPdfUrl());
+            companyInfoDTO.setCompanyLogoWebpUrl(companyInfo.getCompanyLogoWebpUrl());
             
             // Convert BankDetails
             if (companyInfo.getBankDetails() != null) {
@@ -238,7 +283,7 @@ public class AuthController {
             
             return ResponseEntity.ok(ApiResponse.success("Company info retrieved", companyInfoDTO));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("Error retrieving company info: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(ApiResponse.error("Error", e.getMessage() != null ? e.getMessage() : "Failed to retrieve company info"));
         }
@@ -252,14 +297,8 @@ public class AuthController {
                 return ResponseEntity.ok(ApiResponse.success("Token validation result", false));
             }
             
-            // Validate token - check if expired and extract userId
-            String userId = jwtService.extractUserId(token);
-            if (userId == null || jwtService.isTokenExpired(token)) {
-                return ResponseEntity.ok(ApiResponse.success("Token validation result", false));
-            }
-            
-            // Token is valid
-            return ResponseEntity.ok(ApiResponse.success("Token validation result", true));
+            // Validate token - signature, expiry and userId in one check
+            return ResponseEntity.ok(ApiResponse.success("Token validation result", jwtService.verify(token).isPresent()));
         } catch (Exception e) {
             // Any exception means token is invalid
             return ResponseEntity.ok(ApiResponse.success("Token validation result", false));
@@ -0,0 +1,91 @@
+package com.invoiceapp.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceapp.dto.ApiResponse;
+import com.invoiceapp.dto.BrevoWebhookEvent;
+import com.invoiceapp.dto.EmailDeliveryDTO;
+import com.invoiceapp.service.EmailDeliveryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Delivery status of invoice emails, and the Brevo webhook that feeds it.
+ */
+@RestController
+@RequestMapping("/api")
+public class EmailDeliveryController {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailDeliveryController.class);
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final EmailDeliveryService emailDeliveryService;
+    private final ObjectMapper objectMapper;
+
+    public EmailDeliveryController(EmailDeliveryService emailDeliveryService, ObjectMapper objectMapper) {
+        this.emailDeliveryService = emailDeliveryService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/emails/{deliveryId}")
+    public ResponseEntity<ApiResponse<EmailDeliveryDTO>> getDelivery(@PathVariable String deliveryId) {
+        return emailDeliveryService.getDelivery(deliveryId)
+                .map(delivery -> ResponseEntity.ok(ApiResponse.success("Email delivery retrieved successfully", delivery)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Email delivery not found", "No email delivery with id " + deliveryId)));
+    }
+
+    /**
+     * Brevo transactional webhook. Accepts a single event or, with Brevo's batched webhooks,
+     * an array of them. Authenticated by brevo.webhook.token, sent by Brevo as a bearer token
+     * (or as ?token= where headers cannot be configured). A 503 makes Brevo retry the batch.
+     */
+    @PostMapping("/webhooks/brevo")
+    public ResponseEntity<Void> brevoWebhook(
+            @RequestBody JsonNode body,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam(value = "token", required = false) String token) {
+        if (!emailDeliveryService.isWebhookEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        String presented = authorization != null && authorization.startsWith(BEARER_PREFIX)
+                ? authorization.substring(BEARER_PREFIX.length()) : token;
+        if (!emailDeliveryService.isWebhookTokenValid(presented)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        List<BrevoWebhookEvent> events;
+        try {
+            events = body.isArray()
+                    ? objectMapper.convertValue(body, new TypeReference<List<BrevoWebhookEvent>>() {})
+                    : List.of(objectMapper.treeToValue(body, BrevoWebhookEvent.class));
+        } catch (Exception e) {
+            logger.warn("Unreadable Brevo webhook payload: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            int applied = emailDeliveryService.ingest(events);
+            logger.debug("Applied {} of {} Brevo webhook events", applied, events.size());
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            logger.error("Could not store Brevo webhook events: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package com.invoiceapp.controller;
 
+import com.invoiceapp.service.FileDownloadService;
 import com.invoiceapp.service.FileStorageService;
+import com.invoiceapp.service.SignedUrlService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -16,10 +18,12 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/files")
@@ -27,10 +31,15 @@ public class FileController {
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
     
     private final FileStorageService fileStorageService;
+    private final FileDownloadService fileDownloadService;
+    private final SignedUrlService signedUrlService;
     
     @Autowired
-    public FileController(FileStorageService fileStorageService) {
+    public FileController(FileStorageService fileStorageService, FileDownloadService fileDownloadService,
+                          SignedUrlService signedUrlService) {
         this.fileStorageService = fileStorageService;
+        this.fileDownloadService = fileDownloadService;
+        this.signedUrlService = signedUrlService;
     }
 
     @PostMapping("/upload")
@@ -40,21 +49,10 @@ public class FileController {
         
         try {
             String fileId = fileStorageService.storeFile(file, userId);
+            return ResponseEntity.ok(uploadResponse(fileId, file.getOriginalFilename(), file.getContentType(), file.getSize()));
             
-            String fileDownloadUri = ServletUriComponentsBuilder.fromCurrentContextPath()
-                    .path("/api/files/download/")
-                    .path(fileId)
-                    .toUriString();
-            
-            Map<String, String> response = new HashMap<>();
-            response.put("fileId", fileId);
-            response.put("fileName", file.getOriginalFilename());
-            response.put("fileDownloadUri", fileDownloadUri);
-            response.put("fileType", file.getContentType());
-            response.put("size", String.valueOf(file.getSize()));
-            
-            return ResponseEntity.ok(response);
-            
+        } catch (FileStorageService.FileTooLargeException e) {
+            return fileTooLargeResponse(e.getMaxBytes());
         } catch (Exception e) {
             logger.error("Error uploading file: {}", e.getMessage(), e);
             throw new ResponseStatusException(
@@ -65,38 +63,130 @@ public class FileController {
         }
     }
 
-    @GetMapping("/download/{fileId}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String fileId) {
+    /**
+     * Raw-body upload: the request body is the file itself and is streamed straight to the
+     * upload volume while being hashed, without multipart parsing or a heap copy.
+     * Declared Content-Lengths over the limit are refused before anything is read.
+     */
+    @PostMapping("/upload/stream")
+    public ResponseEntity<Map<String, String>> uploadStream(
+            @RequestParam("filename") String filename,
+            HttpServletRequest request) {
+        
+        long maxBytes = fileStorageService.getMaxUploadBytes();
+        if (request.getContentLengthLong() > maxBytes) {
+            return fileTooLargeResponse(maxBytes);
+        }
+        
         try {
+            String fileId = fileStorageService.storeStream(request.getInputStream(),
+                    FileStorageService.extensionOf(filename), "file", maxBytes);
             FileStorageService.FileMetadata metadata = fileStorageService.getFileMetadata(fileId);
-            if (metadata == null) {
-                logger.warn("File not found for ID: {}", fileId);
-                return ResponseEntity.notFound().build();
-            }
-
-            Path filePath = Paths.get(metadata.getFilePath());
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                logger.warn("File not found or not readable: {}", filePath);
-                return ResponseEntity.notFound().build();
-            }
-
-            logger.info("Serving file: {} (type: {})", metadata.getFilename(), metadata.getContentType());
+            return ResponseEntity.ok(uploadResponse(fileId, filename, request.getContentType(),
+                    metadata != null ? metadata.getSize() : request.getContentLengthLong()));
             
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(metadata.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                           "attachment; filename=\"" + metadata.getFilename() + "\"")
-                    .body(resource);
-                    
+        } catch (FileStorageService.FileTooLargeException e) {
+            return fileTooLargeResponse(e.getMaxBytes());
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
-            logger.error("Error serving file with ID {}: {}", fileId, e.getMessage(), e);
+            logger.error("Error uploading file: {}", e.getMessage(), e);
             throw new ResponseStatusException(
                 HttpStatus.INTERNAL_SERVER_ERROR, 
-                "Error processing file download", 
+                "Error uploading file: " + e.getMessage(), 
                 e
             );
         }
     }
+    
+    private Map<String, String> uploadResponse(String fileId, String fileName, String fileType, long size) {
+        String fileDownloadUri = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/files/download/")
+                .path(fileId.substring(fileId.lastIndexOf('/') + 1))
+                .toUriString();
+        
+        Map<String, String> response = new HashMap<>();
+        response.put("fileId", fileId);
+        response.put("fileName", fileName);
+        response.put("fileDownloadUri", fileDownloadUri);
+        response.put("fileType", fileType);
+        response.put("size", String.valueOf(size));
+        return response;
+    }
+    
+    private ResponseEntity<Map<String, String>> fileTooLargeResponse(long maxBytes) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "File exceeds the maximum size of " + maxBytes + " bytes");
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(error);
+    }
+
+    /**
+     * Supports Range / If-Range for resumable downloads and answers conditional
+     * requests with 304; see FileDownloadService.
+     */
+    @GetMapping("/download/{fileId}")
+    public void downloadFile(@PathVariable String fileId, HttpServletRequest request,
+                             HttpServletResponse response) {
+        FileStorageService.FileMetadata metadata = fileStorageService.getFileMetadata(fileId);
+        if (metadata == null) {
+            logger.warn("File not found for ID: {}", fileId);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        try {
+            logger.debug("Serving file: {} (type: {})", metadata.getFilename(), metadata.getContentType());
+            fileDownloadService.serve(metadata, request, response);
+        } catch (IOException e) {
+            // Usually the client went away mid-transfer
+            logger.debug("Download of {} aborted: {}", fileId, e.getMessage());
+        }
+    }
+
+    /**
+     * Target of signed links (see SignedUrlService). Needs no authentication or lookup:
+     * the signature covers the file name and expiry. Content never changes under a name,
+     * so browsers may cache it privately until the link expires.
+     */
+    @GetMapping("/signed/{fileId}")
+    public void downloadSigned(@PathVariable String fileId,
+                               @RequestParam(value = "expires", required = false) Long expires,
+                               @RequestParam(value = "sig", required = false) String signature,
+                               HttpServletRequest request, HttpServletResponse response) {
+        SignedUrlService.Verdict verdict = expires == null
+                ? SignedUrlService.Verdict.INVALID
+                : signedUrlService.verify(fileId, expires, signature);
+        if (verdict != SignedUrlService.Verdict.VALID) {
+            logger.debug("Rejected signed link for {}: {}", fileId, verdict);
+            response.setStatus(verdict == SignedUrlService.Verdict.EXPIRED
+                    ? HttpStatus.GONE.value() : HttpStatus.FORBIDDEN.value());
+            return;
+        }
+
+        FileStorageService.FileMetadata metadata = fileStorageService.getFileMetadata(fileId);
+        if (metadata == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long remaining = expires - Instant.now().getEpochSecond();
+        // Object stores can serve the bytes themselves; hand out a short-lived direct URL
+        Optional<String> direct = fileStorageService.presign(metadata,
+                Duration.ofSeconds(Math.min(remaining, TimeUnit.HOURS.toSeconds(1))));
+        if (direct.isPresent()) {
+            response.setStatus(HttpStatus.FOUND.value());
+            response.setHeader(HttpHeaders.LOCATION, direct.get());
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(Math.min(remaining, TimeUnit.DAYS.toSeconds(1)), TimeUnit.SECONDS)
+                        .cachePrivate().getHeaderValue());
+        try {
+            fileDownloadService.serve(metadata, request, response);
+        } catch (IOException e) {
+            logger.debug("Download of {} aborted: {}", fileId, e.getMessage());
+        }
+    }
 }
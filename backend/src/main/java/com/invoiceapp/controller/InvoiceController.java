@@ -1,18 +1,34 @@
 package com.invoiceapp.controller;
 
 import com.invoiceapp.dto.ApiResponse;
+import com.invoiceapp.dto.EmailDeliveryDTO;
 import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.dto.InvoicePatchRequest;
+import com.invoiceapp.dto.ServiceLinePage;
+import com.invoiceapp.entity.EmailDelivery;
+import com.invoiceapp.entity.ServiceItem;
+import com.invoiceapp.service.EmailDeliveryService;
 import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.IdempotencyService;
+import com.invoiceapp.service.InvoiceEventStreamService;
 import com.invoiceapp.service.InvoiceService;
-import com.invoiceapp.service.PdfService;
+import com.invoiceapp.service.PdfRenderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/invoices")
@@ -26,9 +42,11 @@ import java.util.List;
                 "http://localhost:3000"
         },
         allowedHeaders = "*",
-        methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS})
+        methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.PATCH, RequestMethod.DELETE, RequestMethod.OPTIONS})
 public class InvoiceController {
     
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceController.class);
+    
     @Autowired
     private InvoiceService invoiceService;
     
@@ -36,32 +54,68 @@ public class InvoiceController {
     private EmailService emailService;
     
     @Autowired
-    private PdfService pdfService;
+    private EmailDeliveryService emailDeliveryService;
+    
+    @Autowired
+    private PdfRenderService pdfRenderService;
+    
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    @Autowired
+    private InvoiceEventStreamService invoiceEventStreamService;
     
     @PostMapping
-    public ResponseEntity<ApiResponse<InvoiceDTO>> createInvoice(@Valid @RequestBody InvoiceDTO invoiceDTO) {
-        System.out.println("Creating new invoice");
-        try {
-            InvoiceDTO savedInvoice = invoiceService.createInvoice(invoiceDTO);
-            return ResponseEntity.status(HttpStatus.CREATED)
-                .body(ApiResponse.success("Invoice created successfully", savedInvoice));
-        } catch (Exception e) {
-            System.out.println("Error creating invoice: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                .body(ApiResponse.error("Failed to create invoice", e.getMessage()));
-        }
+    public ResponseEntity<ApiResponse<InvoiceDTO>> createInvoice(
+            @Valid @RequestBody InvoiceDTO invoiceDTO,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        logger.debug("Creating new invoice");
+        return idempotencyService.execute("invoice-create", idempotencyKey, invoiceDTO, InvoiceDTO.class, () -> {
+            try {
+                InvoiceDTO savedInvoice = invoiceService.createInvoice(invoiceDTO);
+                return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(ApiResponse.success("Invoice created successfully", savedInvoice));
+            } catch (Exception e) {
+                logger.error("Error creating invoice: {}", e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error("Failed to create invoice", e.getMessage()));
+            }
+        });
     }
     
     @PutMapping("/{id}")
     public ResponseEntity<ApiResponse<InvoiceDTO>> updateInvoice(
             @PathVariable String id, 
             @Valid @RequestBody InvoiceDTO invoiceDTO) {
-        System.out.println("Updating invoice: " + id);
+        logger.debug("Updating invoice: {}", id);
         try {
             InvoiceDTO updatedInvoice = invoiceService.updateInvoice(id, invoiceDTO);
             return ResponseEntity.ok(ApiResponse.success("Invoice updated successfully", updatedInvoice));
+        } catch (OptimisticLockingFailureException e) {
+            logger.warn("Conflict updating invoice: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("Invoice was modified by another request", e.getMessage()));
         } catch (Exception e) {
-            System.out.println("Error updating invoice: " + e.getMessage());
+            logger.error("Error updating invoice: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Failed to update invoice", e.getMessage()));
+        }
+    }
+    
+    @PatchMapping("/{id}")
+    public ResponseEntity<ApiResponse<InvoiceDTO>> patchInvoice(
+            @PathVariable String id,
+            @Valid @RequestBody InvoicePatchRequest patchRequest) {
+        logger.debug("Patching invoice: {}", id);
+        try {
+            InvoiceDTO updatedInvoice = invoiceService.patchInvoice(id, patchRequest);
+            return ResponseEntity.ok(ApiResponse.success("Invoice updated successfully", updatedInvoice));
+        } catch (OptimisticLockingFailureException e) {
+            logger.warn("Conflict patching invoice: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("Invoice was modified by another request", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error patching invoice: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(ApiResponse.error("Failed to update invoice", e.getMessage()));
         }
@@ -69,25 +123,50 @@ public class InvoiceController {
     
     @GetMapping
     public ResponseEntity<ApiResponse<List<InvoiceDTO>>> getAllInvoices() {
-        System.out.println("Fetching all invoices");
+        logger.debug("Fetching all invoices");
         try {
             List<InvoiceDTO> invoices = invoiceService.getAllInvoices();
             return ResponseEntity.ok(ApiResponse.success("Invoices retrieved successfully", invoices));
         } catch (Exception e) {
-            System.out.println("Error fetching invoices: " + e.getMessage());
+            logger.error("Error fetching invoices: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(ApiResponse.error("Failed to fetch invoices", e.getMessage()));
         }
     }
     
+    /**
+     * Live created/updated/deleted deltas for the signed-in tenant's invoices, so open lists
+     * stay current without refetching. Events whose tenant is unknown (a delete seen by the
+     * change stream without a pre-image) are passed on too, as they carry only the invoice id.
+     * A reconnecting client sends Last-Event-ID (or ?lastEventId=) and receives what it missed;
+     * a "reset" event means the gap is unknown and the list should be reloaded.
+     * Browsers' EventSource cannot send the Authorization header; use a fetch-based SSE client.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamInvoiceChanges(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+            Authentication authentication) {
+        String tenantId = authentication.getName();
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        logger.debug("Opening invoice stream for tenant {} (last event {})", tenantId, lastEventId);
+        SseEmitter emitter = invoiceEventStreamService.open(
+            event -> tenantId.equals(event.getTenantId())
+                || (event.getTenantId() == null && event.getInvoice() == null), lastEventId);
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .header("X-Accel-Buffering", "no") // keep nginx from buffering the stream
+            .body(emitter);
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<InvoiceDTO>> getInvoiceById(@PathVariable String id) {
-        System.out.println("Fetching invoice: " + id);
+        logger.debug("Fetching invoice: {}", id);
         try {
             InvoiceDTO invoice = invoiceService.getInvoiceById(id);
             return ResponseEntity.ok(ApiResponse.success("Invoice retrieved successfully", invoice));
         } catch (Exception e) {
-            System.out.println("Error fetching invoice: " + e.getMessage());
+            logger.error("Error fetching invoice: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(ApiResponse.error("Invoice not found", e.getMessage()));
         }
@@ -95,65 +174,164 @@ public class InvoiceController {
     
     @DeleteMapping("/{id}")
     public ResponseEntity<ApiResponse<Void>> deleteInvoice(@PathVariable String id) {
-        System.out.println("Deleting invoice: " + id);
+        logger.debug("Deleting invoice: {}", id);
         try {
             invoiceService.deleteInvoice(id);
             return ResponseEntity.ok(ApiResponse.success("Invoice deleted successfully"));
         } catch (Exception e) {
-            System.out.println("Error deleting invoice: " + e.getMessage());
+            logger.error("Error deleting invoice: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(ApiResponse.error("Failed to delete invoice", e.getMessage()));
         }
     }
     
+    @GetMapping("/{id}/services")
+    public ResponseEntity<ApiResponse<ServiceLinePage>> getServiceLines(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            ServiceLinePage lines = invoiceService.getServiceLines(id, page, size);
+            return ResponseEntity.ok(ApiResponse.success("Service lines retrieved successfully", lines));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Invalid page request", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error fetching service lines: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error("Invoice not found", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/{id}/services")
+    public ResponseEntity<ApiResponse<ServiceItem>> addServiceLine(
+            @PathVariable String id,
+            @RequestBody ServiceItem serviceItem) {
+        try {
+            ServiceItem added = invoiceService.addServiceLine(id, serviceItem);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                .body(ApiResponse.success("Service line added successfully", added));
+        } catch (Exception e) {
+            logger.error("Error adding service line: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Failed to add service line", e.getMessage()));
+        }
+    }
+    
+    @PutMapping("/{id}/services/{lineId}")
+    public ResponseEntity<ApiResponse<ServiceItem>> updateServiceLine(
+            @PathVariable String id,
+            @PathVariable String lineId,
+            @RequestBody ServiceItem serviceItem) {
+        try {
+            ServiceItem updated = invoiceService.updateServiceLine(id, lineId, serviceItem);
+            return ResponseEntity.ok(ApiResponse.success("Service line updated successfully", updated));
+        } catch (Exception e) {
+            logger.error("Error updating service line: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Failed to update service line", e.getMessage()));
+        }
+    }
+    
+    @DeleteMapping("/{id}/services/{lineId}")
+    public ResponseEntity<ApiResponse<Void>> removeServiceLine(
+            @PathVariable String id,
+            @PathVariable String lineId) {
+        try {
+            invoiceService.removeServiceLine(id, lineId);
+            return ResponseEntity.ok(ApiResponse.success("Service line removed successfully"));
+        } catch (Exception e) {
+            logger.error("Error removing service line: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Failed to remove service line", e.getMessage()));
+        }
+    }
+    
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadInvoicePdf(@PathVariable String id, @RequestParam String invoiceNumber) {
-        System.out.println("Downloading PDF for invoice: " + id);
+    public ResponseEntity<StreamingResponseBody> downloadInvoicePdf(@PathVariable String id, @RequestParam String invoiceNumber) {
+        logger.debug("Downloading PDF for invoice: {}", id);
         try {
             InvoiceDTO invoice = invoiceService.getInvoiceById(id);
-            byte[] pdfBytes = pdfService.generateInvoicePdf(invoice);
+            
+            // Pages are written to the socket as they are rendered instead of buffering a byte[]
+            StreamingResponseBody body = pdfRenderService.streamInvoicePdf(invoice);
             
             return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_PDF)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"Invoice_" + invoiceNumber + ".pdf\"")
-                .body(pdfBytes);
+                .body(body);
+        } catch (RejectedExecutionException e) {
+            logger.warn("PDF rendering saturated: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(pdfRenderService.getRetryAfterSeconds()))
+                .build();
         } catch (Exception e) {
-            System.out.println("Error downloading PDF: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            logger.error("Error downloading PDF: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
     
+    /**
+     * Queues the email and answers 202 with its delivery record; the send itself runs in the
+     * background. Poll GET /api/emails/{deliveryId} (or /{id}/emails) instead of sending again
+     * when unsure whether it went out.
+     */
     @PostMapping(value = "/{id}/send-email", produces = {"application/json"})
-    public ResponseEntity<ApiResponse<Void>> sendInvoiceEmail(@PathVariable String id, @RequestBody(required = false) byte[] pdfBytes) {
-        System.out.println("Sending invoice email: " + id);
-        try {
-            InvoiceDTO invoice = invoiceService.getInvoiceById(id);
-            
-            // If PDF bytes are provided (from frontend), use them; otherwise generate on backend
-            if (pdfBytes != null && pdfBytes.length > 0) {
-                System.out.println("Using frontend-generated PDF (" + pdfBytes.length + " bytes)");
-                emailService.sendInvoiceEmailWithPdf(invoice, pdfBytes);
-            } else {
-                System.out.println("Generating PDF on backend");
-                emailService.sendInvoiceEmail(invoice);
+    public ResponseEntity<ApiResponse<EmailDeliveryDTO>> sendInvoiceEmail(
+            @PathVariable String id,
+            @RequestBody(required = false) byte[] pdfBytes,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        logger.debug("Sending invoice email: {}", id);
+        return idempotencyService.execute("invoice-email:" + id, idempotencyKey, pdfBytes, EmailDeliveryDTO.class, () -> {
+            EmailDelivery delivery = null;
+            try {
+                InvoiceDTO invoice = invoiceService.getInvoiceById(id);
+                boolean withPdf = pdfBytes != null && pdfBytes.length > 0;
+                delivery = emailDeliveryService.queue(invoice, withPdf ? "attachment" : "html");
+                
+                // If PDF bytes are provided (from frontend), use them; otherwise generate on backend
+                if (withPdf) {
+                    logger.debug("Using frontend-generated PDF ({} bytes)", pdfBytes.length);
+                    emailService.sendInvoiceEmailWithPdf(invoice, pdfBytes, delivery);
+                } else {
+                    logger.debug("Generating PDF on backend");
+                    emailService.sendInvoiceEmail(invoice, delivery);
+                }
+                
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success("Email queued for sending", EmailDeliveryService.toDTO(delivery)));
+            } catch (Exception e) {
+                logger.error("Error sending email: {}", e.getMessage(), e);
+                emailDeliveryService.failed(delivery, e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.<EmailDeliveryDTO>error("Failed to send email", e.getMessage()));
             }
-            
-            return ResponseEntity.ok(ApiResponse.success("Email sent successfully"));
+        });
+    }
+    
+    /**
+     * Email sends for the invoice, newest first, with their delivery status.
+     */
+    @GetMapping("/{id}/emails")
+    public ResponseEntity<ApiResponse<List<EmailDeliveryDTO>>> getInvoiceEmails(@PathVariable String id) {
+        try {
+            List<EmailDeliveryDTO> deliveries = emailDeliveryService.getDeliveriesForInvoice(id);
+            return ResponseEntity.ok(ApiResponse.success("Email deliveries retrieved successfully", deliveries));
         } catch (Exception e) {
-            System.out.println("Error sending email: " + e.getMessage());
+            logger.error("Error fetching email deliveries: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(ApiResponse.error("Failed to send email", e.getMessage()));
+                .body(ApiResponse.error("Failed to fetch email deliveries", e.getMessage()));
         }
     }
     
     @GetMapping("/employee/{employeeId}")
     public ResponseEntity<ApiResponse<List<InvoiceDTO>>> getInvoicesByEmployee(@PathVariable String employeeId) {
-        System.out.println("Fetching invoices for employee: " + employeeId);
+        logger.debug("Fetching invoices for employee: {}", employeeId);
         try {
             List<InvoiceDTO> invoices = invoiceService.getInvoicesByEmployeeId(employeeId);
             return ResponseEntity.ok(ApiResponse.success("Invoices retrieved successfully", invoices));
         } catch (Exception e) {
-            System.out.println("Error fetching employee invoices: " + e.getMessage());
+            logger.error("Error fetching employee invoices: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(ApiResponse.error("Failed to fetch invoices", e.getMessage()));
         }
@@ -0,0 +1,65 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.dto.InvoiceEvent;
+import com.invoiceapp.service.InvoiceEventStreamService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Invoice change feed for dependent services (reporting, search, caches), so they can
+ * apply deltas instead of polling GET /api/invoices. Like GET /api/invoices it is scoped to
+ * the tenant of the calling token.
+ */
+@RestController
+@RequestMapping("/api/events")
+public class InvoiceEventController {
+
+    private final InvoiceEventStreamService eventStreamService;
+
+    public InvoiceEventController(InvoiceEventStreamService eventStreamService) {
+        this.eventStreamService = eventStreamService;
+    }
+
+    /**
+     * @param types optional subset of created, updated, deleted
+     */
+    @GetMapping(value = "/invoices", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> invoiceEvents(
+            @RequestParam(value = "types", required = false) List<String> types,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            Authentication authentication) {
+        String tenantId = authentication.getName();
+        Set<InvoiceEvent.Type> wanted = EnumSet.allOf(InvoiceEvent.Type.class);
+        if (types != null && !types.isEmpty()) {
+            wanted = EnumSet.noneOf(InvoiceEvent.Type.class);
+            try {
+                for (String type : types) {
+                    wanted.add(InvoiceEvent.Type.valueOf(type.trim().toUpperCase(Locale.ROOT)));
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        Set<InvoiceEvent.Type> filter = wanted;
+        // Events of unknown tenant carry only the invoice id (see InvoiceController.streamInvoiceChanges)
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .header("X-Accel-Buffering", "no") // keep nginx from buffering the stream
+                .body(eventStreamService.open(event -> filter.contains(event.getType())
+                        && (tenantId.equals(event.getTenantId())
+                                || (event.getTenantId() == null && event.getInvoice() == null)), lastEventId));
+    }
+}
@@ -2,9 +2,10 @@ package com.invoiceapp.controller;
 
 import com.invoiceapp.dto.InvoiceDTO;
 import com.invoiceapp.service.BrevoEmailService;
-import com.invoiceapp.service.PdfService;
+import com.invoiceapp.service.PdfRenderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -14,6 +15,8 @@ import org.springframework.web.bind.annotation.RestController;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Test controller for email and PDF generation
@@ -25,11 +28,11 @@ public class TestController {
     private static final Logger logger = LoggerFactory.getLogger(TestController.class);
     
     private final BrevoEmailService emailService;
-    private final PdfService pdfService;
+    private final PdfRenderService pdfRenderService;
     
-    public TestController(BrevoEmailService emailService, PdfService pdfService) {
+    public TestController(BrevoEmailService emailService, PdfRenderService pdfRenderService) {
         this.emailService = emailService;
-        this.pdfService = pdfService;
+        this.pdfRenderService = pdfRenderService;
     }
     
     /**
@@ -51,7 +54,7 @@ public class TestController {
                 }
             }
             
-            emailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail());
+            emailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail(), null);
             return createSuccessResponse("Email with client PDF sent successfully");
             
         } catch (IllegalArgumentException e) {
@@ -65,15 +68,25 @@ public class TestController {
     }
     
     /**
-     * Generates PDF on the server and sends it via email
+     * Generates PDF on the server and sends it via email.
+     * Rendering runs on the PDF render pool; the request thread is released while it runs.
      */
     @PostMapping("/send-email/server-pdf")
-    public ResponseEntity<Map<String, Object>> sendEmailWithServerPdf(@RequestBody InvoiceDTO invoice) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> sendEmailWithServerPdf(@RequestBody InvoiceDTO invoice) {
+        logger.info("Generating PDF on server and sending email");
+        
+        CompletableFuture<byte[]> rendering;
         try {
-            logger.info("Generating PDF on server and sending email");
-            
-            // Generate PDF on server
-            byte[] pdfContent = pdfService.generateInvoicePdf(invoice);
+            rendering = pdfRenderService.renderInvoicePdf(invoice);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejecting server PDF email: {}", e.getMessage());
+            ResponseEntity<Map<String, Object>> busy = createErrorResponse(e.getMessage(), 503);
+            return CompletableFuture.completedFuture(ResponseEntity.status(503)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(pdfRenderService.getRetryAfterSeconds()))
+                    .body(busy.getBody()));
+        }
+        
+        return rendering.thenApply(pdfContent -> {
             double sizeMB = pdfContent.length / (1024.0 * 1024.0);
             
             // Set the generated PDF content
@@ -82,18 +95,18 @@ public class TestController {
             logger.info("Generated server PDF size: {} MB", String.format("%.2f", sizeMB));
             
             // Send email with the generated PDF
-            emailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail());
+            emailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail(), null);
             
             return createSuccessResponse("Email with server-generated PDF sent successfully");
-            
-        } catch (IOException e) {
-            logger.error("Failed to generate PDF: {}", e.getMessage(), e);
-            return createErrorResponse("Failed to generate PDF: " + e.getMessage(), 500);
-            
-        } catch (Exception e) {
-            logger.error("Failed to send email: {}", e.getMessage(), e);
-            return createErrorResponse("Failed to send email: " + e.getMessage(), 500);
-        }
+        }).exceptionally(ex -> {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof IOException) {
+                logger.error("Failed to generate PDF: {}", cause.getMessage(), cause);
+                return createErrorResponse("Failed to generate PDF: " + cause.getMessage(), 500);
+            }
+            logger.error("Failed to send email: {}", cause.getMessage(), cause);
+            return createErrorResponse("Failed to send email: " + cause.getMessage(), 500);
+        });
     }
     
     private ResponseEntity<Map<String, Object>> createSizeErrorResponse(double sizeMB) {
@@ -0,0 +1,62 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.service.FileDownloadService;
+import com.invoiceapp.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves /uploads URLs when files live in a remote backend instead of the local upload
+ * directory (which WebConfig maps as static resources otherwise). Same cache lifetime as
+ * the static mapping.
+ */
+@RestController
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class UploadsController {
+    private static final Logger logger = LoggerFactory.getLogger(UploadsController.class);
+
+    private final FileStorageService fileStorageService;
+    private final FileDownloadService fileDownloadService;
+
+    public UploadsController(FileStorageService fileStorageService, FileDownloadService fileDownloadService) {
+        this.fileStorageService = fileStorageService;
+        this.fileDownloadService = fileDownloadService;
+    }
+
+    @GetMapping({"/uploads/{name}", "/uploads/{shard1}/{shard2}/{name}"})
+    public void serve(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) {
+        FileStorageService.FileMetadata metadata = isSignedOnly(name) ? null : fileStorageService.getFileMetadata(name);
+        if (metadata == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(1, TimeUnit.HOURS).getHeaderValue());
+        try {
+            fileDownloadService.serve(metadata, request, response, false);
+        } catch (IOException e) {
+            logger.debug("Download of {} aborted: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Generated PDFs are only served through signed links (FileController), never by their
+     * /uploads path; the static mapping in WebConfig applies the same rule.
+     */
+    public static boolean isSignedOnly(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+}
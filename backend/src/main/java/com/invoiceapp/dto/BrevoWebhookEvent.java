@@ -0,0 +1,45 @@
+package com.invoiceapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One transactional email event posted by Brevo (delivered, opened, hard_bounce, ...).
+ * A batched webhook posts an array of these.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BrevoWebhookEvent {
+    private String event;
+    private String email;
+
+    @JsonProperty("message-id")
+    private String messageId;
+
+    @JsonProperty("ts_epoch")
+    private Long tsEpoch; // milliseconds
+
+    @JsonProperty("ts_event")
+    private Long tsEvent; // seconds
+
+    private String reason;
+
+    public BrevoWebhookEvent() {}
+
+    public String getEvent() { return event; }
+    public void setEvent(String event) { this.event = event; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public Long getTsEpoch() { return tsEpoch; }
+    public void setTsEpoch(Long tsEpoch) { this.tsEpoch = tsEpoch; }
+
+    public Long getTsEvent() { return tsEvent; }
+    public void setTsEvent(Long tsEvent) { this.tsEvent = tsEvent; }
+
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+}
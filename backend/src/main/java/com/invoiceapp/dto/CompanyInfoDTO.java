@@ -5,6 +5,9 @@ public class CompanyInfoDTO {
     private String companyName;
     private String companyAddress;
     private String companyLogoUrl;
+    private String companyLogoThumbnailUrl;
+    private String companyLogoPdfUrl;
+    private String companyLogoWebpUrl;
     private BankDetailsDTO bankDetails;
     
     public CompanyInfoDTO() {}
@@ -21,6 +24,15 @@ public class CompanyInfoDTO {
     public String getCompanyLogoUrl() { return companyLogoUrl; }
     public void setCompanyLogoUrl(String companyLogoUrl) { this.companyLogoUrl = companyLogoUrl; }
     
+    public String getCompanyLogoThumbnailUrl() { return companyLogoThumbnailUrl; }
+    public void setCompanyLogoThumbnailUrl(String companyLogoThumbnailUrl) { this.companyLogoThumbnailUrl = companyLogoThumbnailUrl; }
+    
+    public String getCompanyLogoPdfUrl() { return companyLogoPdfUrl; }
+    public void setCompanyLogoPdfUrl(String companyLogoPdfUrl) { this.companyLogoPdfUrl = companyLogoPdfUrl; }
+    
+    public String getCompanyLogoWebpUrl() { return companyLogoWebpUrl; }
+    public void setCompanyLogoWebpUrl(String companyLogoWebpUrl) { this.companyLogoWebpUrl = companyLogoWebpUrl; }
+    
     public BankDetailsDTO getBankDetails() { return bankDetails; }
     public void setBankDetails(BankDetailsDTO bankDetails) { this.bankDetails = bankDetails; }
 }
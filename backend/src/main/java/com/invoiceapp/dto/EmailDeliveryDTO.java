@@ -0,0 +1,77 @@
+package com.invoiceapp.dto;
+
+import com.invoiceapp.entity.EmailDelivery;
+
+/**
+ * One invoice email send as reported by the status API. status combines the sender's
+ * state with the latest Brevo webhook outcome; while it is QUEUED, SENDING or SENT the
+ * email is still on its way and must not be sent again.
+ */
+public class EmailDeliveryDTO {
+    private String id;
+    private String invoiceId;
+    private String invoiceNumber;
+    private String recipient;
+    private String mode;
+    private EmailDelivery.Status status;
+    private String messageId;
+    private int attempts;
+    private Long latencyMs;
+    private String error;
+    private String createdAt;
+    private String sentAt;
+    private String deliveredAt;
+    private String openedAt;
+    private String bouncedAt;
+    private String updatedAt;
+
+    public EmailDeliveryDTO() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getInvoiceId() { return invoiceId; }
+    public void setInvoiceId(String invoiceId) { this.invoiceId = invoiceId; }
+
+    public String getInvoiceNumber() { return invoiceNumber; }
+    public void setInvoiceNumber(String invoiceNumber) { this.invoiceNumber = invoiceNumber; }
+
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public EmailDelivery.Status getStatus() { return status; }
+    public void setStatus(EmailDelivery.Status status) { this.status = status; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public Long getLatencyMs() { return latencyMs; }
+    public void setLatencyMs(Long latencyMs) { this.latencyMs = latencyMs; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public String getCreatedAt() { return createdAt; }
+    public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
+
+    public String getSentAt() { return sentAt; }
+    public void setSentAt(String sentAt) { this.sentAt = sentAt; }
+
+    public String getDeliveredAt() { return deliveredAt; }
+    public void setDeliveredAt(String deliveredAt) { this.deliveredAt = deliveredAt; }
+
+    public String getOpenedAt() { return openedAt; }
+    public void setOpenedAt(String openedAt) { this.openedAt = openedAt; }
+
+    public String getBouncedAt() { return bouncedAt; }
+    public void setBouncedAt(String bouncedAt) { this.bouncedAt = bouncedAt; }
+
+    public String getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(String updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -30,6 +30,7 @@ public class InvoiceDTO {
     private Double taxRate;
     private String createdAt;
     private String updatedAt;
+    private Long version; // optimistic concurrency token, echoed back on PUT/PATCH
     
     @Transient
     private byte[] pdfContent;
@@ -89,6 +90,9 @@ public class InvoiceDTO {
     public String getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(String updatedAt) { this.updatedAt = updatedAt; }
     
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+    
     public Double getSubTotal() {
         return services.stream().mapToDouble(ServiceItem::getTotal).sum();
     }
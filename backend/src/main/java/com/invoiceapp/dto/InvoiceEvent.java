@@ -0,0 +1,48 @@
+package com.invoiceapp.dto;
+
+/**
+ * One change to an invoice, as delivered to InvoiceEventPublisher subscribers and the
+ * event stream. invoice carries the state after the change; it is null for DELETED, and
+ * also when only the id is known (consumers then refetch the invoice). tenantId is the
+ * invoice's tenant, or null when it could not be determined.
+ */
+public class InvoiceEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private long id;
+    private Type type;
+    private String invoiceId;
+    private InvoiceDTO invoice;
+    private String tenantId;
+    private String occurredAt;
+
+    public InvoiceEvent() {}
+
+    public InvoiceEvent(long id, Type type, String invoiceId, InvoiceDTO invoice, String tenantId, String occurredAt) {
+        this.id = id;
+        this.type = type;
+        this.invoiceId = invoiceId;
+        this.invoice = invoice;
+        this.tenantId = tenantId;
+        this.occurredAt = occurredAt;
+    }
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public Type getType() { return type; }
+    public void setType(Type type) { this.type = type; }
+
+    public String getInvoiceId() { return invoiceId; }
+    public void setInvoiceId(String invoiceId) { this.invoiceId = invoiceId; }
+
+    public InvoiceDTO getInvoice() { return invoice; }
+    public void setInvoice(InvoiceDTO invoice) { this.invoice = invoice; }
+
+    public String getTenantId() { return tenantId; }
+    public void setTenantId(String tenantId) { this.tenantId = tenantId; }
+
+    public String getOccurredAt() { return occurredAt; }
+    public void setOccurredAt(String occurredAt) { this.occurredAt = occurredAt; }
+}
@@ -0,0 +1,59 @@
+package com.invoiceapp.dto;
+
+import com.invoiceapp.entity.ServiceItem;
+import jakarta.validation.constraints.Email;
+import java.util.List;
+
+/**
+ * Partial invoice update. Only non-null fields are applied.
+ * addServices and removeServiceIds cannot be combined in one request.
+ */
+public class InvoicePatchRequest {
+    private String invoiceNumber;
+    private String date;
+    private String employeeName;
+    private String employeeId;
+    @Email(message = "Email should be valid")
+    private String employeeEmail;
+    private String employeeAddress;
+    private String employeeMobile;
+    private Double taxRate;
+    private List<ServiceItem> addServices;
+    private List<String> removeServiceIds;
+    private Long version; // expected version; omit to skip the concurrency check
+
+    public InvoicePatchRequest() {}
+
+    public String getInvoiceNumber() { return invoiceNumber; }
+    public void setInvoiceNumber(String invoiceNumber) { this.invoiceNumber = invoiceNumber; }
+
+    public String getDate() { return date; }
+    public void setDate(String date) { this.date = date; }
+
+    public String getEmployeeName() { return employeeName; }
+    public void setEmployeeName(String employeeName) { this.employeeName = employeeName; }
+
+    public String getEmployeeId() { return employeeId; }
+    public void setEmployeeId(String employeeId) { this.employeeId = employeeId; }
+
+    public String getEmployeeEmail() { return employeeEmail; }
+    public void setEmployeeEmail(String employeeEmail) { this.employeeEmail = employeeEmail; }
+
+    public String getEmployeeAddress() { return employeeAddress; }
+    public void setEmployeeAddress(String employeeAddress) { this.employeeAddress = employeeAddress; }
+
+    public String getEmployeeMobile() { return employeeMobile; }
+    public void setEmployeeMobile(String employeeMobile) { this.employeeMobile = employeeMobile; }
+
+    public Double getTaxRate() { return taxRate; }
+    public void setTaxRate(Double taxRate) { this.taxRate = taxRate; }
+
+    public List<ServiceItem> getAddServices() { return addServices; }
+    public void setAddServices(List<ServiceItem> addServices) { this.addServices = addServices; }
+
+    public List<String> getRemoveServiceIds() { return removeServiceIds; }
+    public void setRemoveServiceIds(List<String> removeServiceIds) { this.removeServiceIds = removeServiceIds; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+}
@@ -0,0 +1,37 @@
+package com.invoiceapp.dto;
+
+import com.invoiceapp.entity.ServiceItem;
+import java.util.List;
+
+public class ServiceLinePage {
+    private List<ServiceItem> items;
+    private int page;
+    private int size;
+    private int totalItems;
+    private int totalPages;
+
+    public ServiceLinePage() {}
+
+    public ServiceLinePage(List<ServiceItem> items, int page, int size, int totalItems) {
+        this.items = items;
+        this.page = page;
+        this.size = size;
+        this.totalItems = totalItems;
+        this.totalPages = size > 0 ? (totalItems + size - 1) / size : 0;
+    }
+
+    public List<ServiceItem> getItems() { return items; }
+    public void setItems(List<ServiceItem> items) { this.items = items; }
+
+    public int getPage() { return page; }
+    public void setPage(int page) { this.page = page; }
+
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+
+    public int getTotalItems() { return totalItems; }
+    public void setTotalItems(int totalItems) { this.totalItems = totalItems; }
+
+    public int getTotalPages() { return totalPages; }
+    public void setTotalPages(int totalPages) { this.totalPages = totalPages; }
+}
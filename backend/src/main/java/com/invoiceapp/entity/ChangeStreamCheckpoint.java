@@ -0,0 +1,30 @@
+package com.invoiceapp.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Last resume token handled by a change stream consumer, so a restart continues after the
+ * last published event instead of missing whatever changed while the node was down.
+ */
+@Document(collection = "change_stream_checkpoints")
+public class ChangeStreamCheckpoint {
+    @Id
+    private String id; // consumer name, e.g. "invoices"
+
+    private String resumeToken; // extended JSON of the change event's _id
+
+    private LocalDateTime updatedAt;
+
+    public ChangeStreamCheckpoint() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getResumeToken() { return resumeToken; }
+    public void setResumeToken(String resumeToken) { this.resumeToken = resumeToken; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -14,6 +14,9 @@ public class CompanyInfo {
     private String companyName;
     private String companyAddress;
     private String companyLogoUrl; // URL/path to stored logo
+    private String companyLogoThumbnailUrl; // Set once background logo processing finishes
+    private String companyLogoPdfUrl; // Fixed-width JPEG rendition for invoice PDFs
+    private String companyLogoWebpUrl; // Only set when a WebP encoder is available
     
     private BankDetails bankDetails;
     
@@ -48,6 +51,15 @@ public class CompanyInfo {
     public String getCompanyLogoUrl() { return companyLogoUrl; }
     public void setCompanyLogoUrl(String companyLogoUrl) { this.companyLogoUrl = companyLogoUrl; }
     
+    public String getCompanyLogoThumbnailUrl() { return companyLogoThumbnailUrl; }
+    public void setCompanyLogoThumbnailUrl(String companyLogoThumbnailUrl) { this.companyLogoThumbnailUrl = companyLogoThumbnailUrl; }
+    
+    public String getCompanyLogoPdfUrl() { return companyLogoPdfUrl; }
+    public void setCompanyLogoPdfUrl(String companyLogoPdfUrl) { this.companyLogoPdfUrl = companyLogoPdfUrl; }
+    
+    public String getCompanyLogoWebpUrl() { return companyLogoWebpUrl; }
+    public void setCompanyLogoWebpUrl(String companyLogoWebpUrl) { this.companyLogoWebpUrl = companyLogoWebpUrl; }
+    
     public BankDetails getBankDetails() { return bankDetails; }
     public void setBankDetails(BankDetails bankDetails) { this.bankDetails = bankDetails; }
     
@@ -0,0 +1,107 @@
+package com.invoiceapp.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * One invoice email send. The sender moves it from QUEUED through SENDING to SENT (accepted
+ * by Brevo, which returns the messageId) or FAILED. What happens to the message afterwards
+ * arrives through the Brevo webhook and is kept in EmailMessageStatus under the same messageId.
+ * Documents are removed by the TTL index on expiresAt.
+ */
+@Document(collection = "email_deliveries")
+@CompoundIndexes({
+    @CompoundIndex(name = "tenant_invoice_created", def = "{'tenantId': 1, 'invoiceId': 1, 'createdAt': -1}")
+})
+public class EmailDelivery {
+
+    /**
+     * QUEUED to FAILED are set by the sender; the rest are derived from webhook events.
+     */
+    public enum Status {
+        QUEUED, SENDING, SENT, FAILED,
+        DEFERRED, SOFT_BOUNCED, DELIVERED, OPENED, CLICKED, BLOCKED, BOUNCED, SPAM
+    }
+
+    @Id
+    private String id;
+
+    private String tenantId; // tenant of the invoice; reads are scoped to it
+
+    private String invoiceId;
+    private String invoiceNumber;
+    private String recipient;
+
+    private String mode; // "html", "attachment" or "download-link"
+
+    private Status status;
+
+    @Indexed(sparse = true)
+    private String messageId;
+
+    private int attempts;
+    private Long latencyMs; // from queueing to Brevo accepting the message
+    private String lastError;
+
+    private String createdBy;
+    private LocalDateTime createdAt;
+    private LocalDateTime sentAt;
+    private LocalDateTime updatedAt;
+
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+
+    public EmailDelivery() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getInvoiceId() { return invoiceId; }
+    public void setInvoiceId(String invoiceId) { this.invoiceId = invoiceId; }
+
+    public String getInvoiceNumber() { return invoiceNumber; }
+    public void setInvoiceNumber(String invoiceNumber) { this.invoiceNumber = invoiceNumber; }
+
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public Long getLatencyMs() { return latencyMs; }
+    public void setLatencyMs(Long latencyMs) { this.latencyMs = latencyMs; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public String getTenantId() { return tenantId; }
+    public void setTenantId(String tenantId) { this.tenantId = tenantId; }
+
+    public String getCreatedBy() { return createdBy; }
+    public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getSentAt() { return sentAt; }
+    public void setSentAt(LocalDateTime sentAt) { this.sentAt = sentAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+}
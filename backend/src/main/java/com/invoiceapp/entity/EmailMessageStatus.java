@@ -0,0 +1,85 @@
+package com.invoiceapp.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * What Brevo reported about one message, keyed by its messageId.
+ * Each kind of event keeps the time it first happened, so webhook retries and events
+ * arriving out of order leave the same result. Kept apart from EmailDelivery because
+ * an event can arrive before the sender has stored the messageId.
+ */
+@Document(collection = "email_message_status")
+public class EmailMessageStatus {
+    @Id
+    private String id; // Brevo message id, e.g. "<202410181203.12345@smtp-relay.mailin.fr>"
+
+    private String recipient;
+
+    private LocalDateTime deliveredAt;
+    private LocalDateTime openedAt;
+    private LocalDateTime clickedAt;
+    private LocalDateTime deferredAt;
+    private LocalDateTime softBouncedAt;
+    private LocalDateTime bouncedAt; // hard bounce or invalid address
+    private LocalDateTime blockedAt;
+    private LocalDateTime spamAt;
+    private LocalDateTime errorAt;
+
+    private String reason; // from the latest bounce, block or error event
+
+    private LocalDateTime lastEventAt;
+    private LocalDateTime updatedAt;
+
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+
+    public EmailMessageStatus() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+
+    public LocalDateTime getDeliveredAt() { return deliveredAt; }
+    public void setDeliveredAt(LocalDateTime deliveredAt) { this.deliveredAt = deliveredAt; }
+
+    public LocalDateTime getOpenedAt() { return openedAt; }
+    public void setOpenedAt(LocalDateTime openedAt) { this.openedAt = openedAt; }
+
+    public LocalDateTime getClickedAt() { return clickedAt; }
+    public void setClickedAt(LocalDateTime clickedAt) { this.clickedAt = clickedAt; }
+
+    public LocalDateTime getDeferredAt() { return deferredAt; }
+    public void setDeferredAt(LocalDateTime deferredAt) { this.deferredAt = deferredAt; }
+
+    public LocalDateTime getSoftBouncedAt() { return softBouncedAt; }
+    public void setSoftBouncedAt(LocalDateTime softBouncedAt) { this.softBouncedAt = softBouncedAt; }
+
+    public LocalDateTime getBouncedAt() { return bouncedAt; }
+    public void setBouncedAt(LocalDateTime bouncedAt) { this.bouncedAt = bouncedAt; }
+
+    public LocalDateTime getBlockedAt() { return blockedAt; }
+    public void setBlockedAt(LocalDateTime blockedAt) { this.blockedAt = blockedAt; }
+
+    public LocalDateTime getSpamAt() { return spamAt; }
+    public void setSpamAt(LocalDateTime spamAt) { this.spamAt = spamAt; }
+
+    public LocalDateTime getErrorAt() { return errorAt; }
+    public void setErrorAt(LocalDateTime errorAt) { this.errorAt = errorAt; }
+
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+
+    public LocalDateTime getLastEventAt() { return lastEventAt; }
+    public void setLastEventAt(LocalDateTime lastEventAt) { this.lastEventAt = lastEventAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,73 @@
+package com.invoiceapp.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * First response recorded for an Idempotency-Key.
+ * Documents are removed by the TTL index on expiresAt.
+ */
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    @Id
+    private String id; // caller + ":" + scope + ":" + client key
+
+    private String requestHash; // SHA-256 of the request payload
+
+    private String status;
+
+    private String claimToken; // random per claim, so a request only releases or completes its own
+
+    private Integer responseStatus;
+    private String responseBody; // JSON of the ApiResponse returned the first time
+
+    private LocalDateTime createdAt;
+
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+
+    public IdempotencyRecord() {}
+
+    public IdempotencyRecord(String id, String requestHash, LocalDateTime createdAt, LocalDateTime expiresAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.status = STATUS_IN_PROGRESS;
+        this.claimToken = UUID.randomUUID().toString();
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getRequestHash() { return requestHash; }
+    public void setRequestHash(String requestHash) { this.requestHash = requestHash; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getClaimToken() { return claimToken; }
+    public void setClaimToken(String claimToken) { this.claimToken = claimToken; }
+
+    public Integer getResponseStatus() { return responseStatus; }
+    public void setResponseStatus(Integer responseStatus) { this.responseStatus = responseStatus; }
+
+    public String getResponseBody() { return responseBody; }
+    public void setResponseBody(String responseBody) { this.responseBody = responseBody; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+
+    public boolean isCompleted() {
+        return STATUS_COMPLETED.equals(status);
+    }
+}
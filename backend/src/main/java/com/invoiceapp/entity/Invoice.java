@@ -1,15 +1,32 @@
 package com.invoiceapp.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Every query filters on tenantId first, so each index below leads with it: a tenant's reads
+ * stay within its own index range however many tenants share the collection, and
+ * {tenantId, _id} can serve as the shard key.
+ */
 @Document(collection = "invoices")
+@CompoundIndexes({
+    @CompoundIndex(name = "tenant_id", def = "{'tenantId': 1, '_id': 1}"),
+    @CompoundIndex(name = "tenant_created", def = "{'tenantId': 1, 'createdAt': -1}"),
+    @CompoundIndex(name = "tenant_employee_created", def = "{'tenantId': 1, 'employeeId': 1, 'createdAt': -1}"),
+    @CompoundIndex(name = "tenant_invoice_number", def = "{'tenantId': 1, 'invoiceNumber': 1}"),
+    @CompoundIndex(name = "tenant_employee_email", def = "{'tenantId': 1, 'employeeEmail': 1}")
+})
 public class Invoice {
     @Id
     private String id;
     
+    private String tenantId; // account that owns the invoice; set on create, never changed
+    
     private String invoiceNumber;
     private String date;
     private String employeeName;
@@ -23,6 +40,9 @@ public class Invoice {
     private LocalDateTime updatedAt;
     private String createdBy;
     
+    @Version
+    private Long version;
+    
     public Invoice() {}
     
     public Invoice(String id, String invoiceNumber, String date, String employeeName, String employeeId,
@@ -47,6 +67,9 @@ public class Invoice {
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
     
+    public String getTenantId() { return tenantId; }
+    public void setTenantId(String tenantId) { this.tenantId = tenantId; }
+    
     public String getInvoiceNumber() { return invoiceNumber; }
     public void setInvoiceNumber(String invoiceNumber) { this.invoiceNumber = invoiceNumber; }
     
@@ -82,4 +105,7 @@ public class Invoice {
     
     public String getCreatedBy() { return createdBy; }
     public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
+    
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
 }
@@ -0,0 +1,62 @@
+package com.invoiceapp.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * One content-addressed blob under the upload directory.
+ * refCount is the number of stores that resolved to this content; a blob at zero
+ * is no longer referenced and may be reclaimed. category is the kind of the first store
+ * ("logo", "rendition", "email-link", ...) and selects the retention rule.
+ * reclaimingUntil is set while the sweeper deletes the blob (see FileStorageService.reclaim).
+ */
+@Document(collection = "stored_files")
+@CompoundIndexes({
+    @CompoundIndex(name = "category_lastReferenced", def = "{'category': 1, 'lastReferencedAt': 1}"),
+    @CompoundIndex(name = "refCount_lastReferenced", def = "{'refCount': 1, 'lastReferencedAt': 1}")
+})
+public class StoredFile {
+    @Id
+    private String id; // SHA-256 hex + extension, e.g. "9f86d0...0a08.png"
+
+    private String path; // relative to file.upload-dir, e.g. "9f/86/9f86d0...0a08.png"
+
+    private long size;
+
+    private String category;
+
+    private long refCount;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime lastReferencedAt;
+    private LocalDateTime reclaimingUntil;
+
+    public StoredFile() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public long getRefCount() { return refCount; }
+    public void setRefCount(long refCount) { this.refCount = refCount; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getLastReferencedAt() { return lastReferencedAt; }
+    public void setLastReferencedAt(LocalDateTime lastReferencedAt) { this.lastReferencedAt = lastReferencedAt; }
+
+    public LocalDateTime getReclaimingUntil() { return reclaimingUntil; }
+    public void setReclaimingUntil(LocalDateTime reclaimingUntil) { this.reclaimingUntil = reclaimingUntil; }
+}
@@ -0,0 +1,13 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.EmailDelivery;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EmailDeliveryRepository extends MongoRepository<EmailDelivery, String> {
+    Optional<EmailDelivery> findByTenantIdAndId(String tenantId, String id);
+    List<EmailDelivery> findByTenantIdAndInvoiceIdOrderByCreatedAtDesc(String tenantId, String invoiceId);
+}
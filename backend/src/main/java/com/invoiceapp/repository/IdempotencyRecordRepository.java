@@ -0,0 +1,9 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.IdempotencyRecord;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IdempotencyRecordRepository extends MongoRepository<IdempotencyRecord, String> {
+}
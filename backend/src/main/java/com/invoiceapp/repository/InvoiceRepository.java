@@ -6,10 +6,15 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Each finder takes the tenant and is backed by one of the tenant-prefixed indexes on Invoice.
+ */
 @Repository
 public interface InvoiceRepository extends MongoRepository<Invoice, String> {
-    List<Invoice> findByEmployeeIdOrderByCreatedAtDesc(String employeeId);
-    List<Invoice> findAllByOrderByCreatedAtDesc();
-    Optional<Invoice> findByInvoiceNumber(String invoiceNumber);
-    List<Invoice> findByEmployeeEmail(String email);
+    Optional<Invoice> findByTenantIdAndId(String tenantId, String id);
+    boolean existsByTenantIdAndId(String tenantId, String id);
+    List<Invoice> findByTenantIdAndEmployeeIdOrderByCreatedAtDesc(String tenantId, String employeeId);
+    List<Invoice> findByTenantIdOrderByCreatedAtDesc(String tenantId);
+    Optional<Invoice> findByTenantIdAndInvoiceNumber(String tenantId, String invoiceNumber);
+    List<Invoice> findByTenantIdAndEmployeeEmail(String tenantId, String email);
 }
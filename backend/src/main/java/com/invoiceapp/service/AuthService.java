@@ -4,22 +4,33 @@ import com.invoiceapp.dto.*;
 import com.invoiceapp.entity.BankDetails;
 import com.invoiceapp.entity.CompanyInfo;
 import com.invoiceapp.entity.User;
-import com.invoiceapp.repository.CompanyInfoRepository;
 import com.invoiceapp.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AuthService {
     
+    private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
+    
     @Autowired
     private UserRepository userRepository;
     
     @Autowired
-    private CompanyInfoRepository companyInfoRepository;
+    private CompanyInfoService companyInfoService;
     
     @Autowired
     private JwtService jwtService;
@@ -27,9 +38,38 @@ public class AuthService {
     @Autowired
     private FileStorageService fileStorageService;
     
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+    
+    @Autowired
+    private LoginThrottleService loginThrottleService;
+    
+    @Autowired
+    private LogoProcessingService logoProcessingService;
+    
+    @Autowired
+    private MongoDatabaseFactory mongoDatabaseFactory;
+    
+    @Value("${signup.transactions.enabled:false}")
+    private boolean signupTransactionsEnabled;
+    
+    private TransactionTemplate signupTransaction;
+    
+    @PostConstruct
+    void initSignupTransaction() {
+        if (signupTransactionsEnabled) {
+            // Local to signup, so no other code path becomes transactional
+            signupTransaction = new TransactionTemplate(new MongoTransactionManager(mongoDatabaseFactory));
+        }
+    }
     
-    public LoginResponse login(LoginRequest loginRequest) {
+    /**
+     * Throttling and the user lookup run on the calling thread; the bcrypt check runs on the
+     * auth executor and the returned future completes there.
+     * @throws LoginThrottleService.ThrottledException if the account or client is over its limit
+     * @throws java.util.concurrent.RejectedExecutionException if the auth executor is saturated
+     */
+    public CompletableFuture<LoginResponse> login(LoginRequest loginRequest, String clientIp) {
         // Validate both email and password are provided
         if (loginRequest.getEmail() == null || loginRequest.getEmail().trim().isEmpty()) {
             throw new IllegalArgumentException("Email is required");
@@ -38,24 +78,33 @@ public class AuthService {
             throw new IllegalArgumentException("Password is required");
         }
         
+        String email = loginRequest.getEmail().toLowerCase().trim();
+        loginThrottleService.checkAllowed(email, clientIp);
+        
         // Find user by email
-        Optional<User> userOpt = userRepository.findByEmail(loginRequest.getEmail().toLowerCase().trim());
+        Optional<User> userOpt = userRepository.findByEmail(email);
         if (userOpt.isEmpty()) {
+            loginThrottleService.recordFailure(email);
             throw new IllegalArgumentException("Invalid email or password");
         }
         
         User user = userOpt.get();
         
         // Verify password using bcrypt
-        if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
-            throw new IllegalArgumentException("Invalid email or password");
-        }
-        
-        // Generate JWT token with only userId and email
-        String token = jwtService.generateToken(user.getId(), user.getEmail());
-        
-        // Return only token, userId, and email (NOT full user object)
-        return new LoginResponse(token, user.getId(), user.getEmail());
+        return passwordHashingService.matches(loginRequest.getPassword(), user.getPassword())
+            .thenApply(matches -> {
+                if (!matches) {
+                    loginThrottleService.recordFailure(email);
+                    throw new IllegalArgumentException("Invalid email or password");
+                }
+                loginThrottleService.recordSuccess(email);
+                
+                // Generate JWT token with only userId and email
+                String token = jwtService.generateToken(user.getId(), user.getEmail());
+                
+                // Return only token, userId, and email (NOT full user object)
+                return new LoginResponse(token, user.getId(), user.getEmail());
+            });
     }
     
     public SignupResponse signup(SignupRequest signupRequest) throws Exception {
@@ -70,31 +119,42 @@ public class AuthService {
             throw new IllegalArgumentException("Password must be at least 6 characters");
         }
         
-        // Check if user already exists
-        if (userRepository.existsByEmail(signupRequest.getEmail().toLowerCase().trim())) {
-            throw new IllegalArgumentException("Email already registered");
-        }
+        String email = signupRequest.getEmail().toLowerCase().trim();
         
-        // Create user
-        User user = new User();
-        user.setEmail(signupRequest.getEmail().toLowerCase().trim());
-        user.setPassword(passwordEncoder.encode(signupRequest.getPassword()));
-        user.setName(signupRequest.getName().trim());
-        user.setCreatedAt(java.time.LocalDateTime.now());
+        // Read the logo now: the multipart temp file is gone once the request completes
+        byte[] logoBytes = null;
+        String logoExtension = null;
+        String logoUrl = null;
         
-        User savedUser = userRepository.save(user);
+        // Ids are generated up front so both documents reference each other from the first write
+        String userId = new ObjectId().toHexString();
+        String companyInfoId = new ObjectId().toHexString();
         
-        // Store company logo if provided
-        String logoUrl = null;
         if (signupRequest.getCompanyLogo() != null && !signupRequest.getCompanyLogo().isEmpty()) {
             try {
-                logoUrl = fileStorageService.storeFile(signupRequest.getCompanyLogo(), savedUser.getId());
+                logoBytes = signupRequest.getCompanyLogo().getBytes();
             } catch (Exception e) {
-                // If logo upload fails, continue without logo
-                System.err.println("Failed to store company logo: " + e.getMessage());
+                // If the logo cannot be read, continue without logo
+                logger.warn("Failed to read company logo: {}", e.getMessage());
+            }
+            if (logoBytes != null) {
+                // Header-only check; rejects non-images and oversized files before anything is written
+                logoProcessingService.validate(logoBytes);
+                logoExtension = FileStorageService.extensionOf(signupRequest.getCompanyLogo().getOriginalFilename());
+                logoUrl = fileStorageService.contentUrl(logoBytes, logoExtension);
             }
         }
         
+        // Create user
+        User user = new User();
+        user.setId(userId);
+        user.setEmail(email);
+        // Hashed on the auth executor so signups share its CPU budget with logins
+        user.setPassword(passwordHashingService.encode(signupRequest.getPassword()).join());
+        user.setName(signupRequest.getName().trim());
+        user.setCompanyInfoId(companyInfoId);
+        user.setCreatedAt(java.time.LocalDateTime.now());
+        
         // Create bank details entity
         BankDetails bankDetails = null;
         if (signupRequest.getBankDetails() != null) {
@@ -111,7 +171,8 @@ public class AuthService {
         
         // Create company info
         CompanyInfo companyInfo = new CompanyInfo();
-        companyInfo.setUserId(savedUser.getId());
+        companyInfo.setId(companyInfoId);
+        companyInfo.setUserId(userId);
         companyInfo.setCompanyName(signupRequest.getCompanyName().trim());
         companyInfo.setCompanyAddress(signupRequest.getCompanyAddress().trim());
         companyInfo.setCompanyLogoUrl(logoUrl);
@@ -119,14 +180,14 @@ public class AuthService {
         companyInfo.setCreatedAt(java.time.LocalDateTime.now());
         companyInfo.setUpdatedAt(java.time.LocalDateTime.now());
         
-        CompanyInfo savedCompanyInfo = companyInfoRepository.save(companyInfo);
+        CompanyInfo savedCompanyInfo = insertSignupDocuments(user, companyInfo);
         
-        // Update user with company info reference
-        savedUser.setCompanyInfoId(savedCompanyInfo.getId());
-        userRepository.save(savedUser);
+        if (logoBytes != null) {
+            submitLogo(userId, companyInfoId, logoExtension, logoBytes);
+        }
         
         // Generate JWT token
-        String token = jwtService.generateToken(savedUser.getId(), savedUser.getEmail());
+        String token = jwtService.generateToken(user.getId(), user.getEmail());
         
         // Convert to DTOs
         BankDetailsDTO bankDetailsDTO = null;
@@ -147,17 +208,63 @@ public class AuthService {
         companyInfoDTO.setCompanyLogoUrl(savedCompanyInfo.getCompanyLogoUrl());
         companyInfoDTO.setBankDetails(bankDetailsDTO);
         
-        return new SignupResponse(token, savedUser.getId(), savedUser.getEmail(), companyInfoDTO);
+        return new SignupResponse(token, user.getId(), user.getEmail(), companyInfoDTO);
+    }
+    
+    /**
+     * Inserts the user, then the company info. The unique email index rejects duplicates, so
+     * no existence query is needed. With signup.transactions.enabled (replica set required) both
+     * inserts commit together; otherwise a failed company insert removes the user again.
+     */
+    private CompanyInfo insertSignupDocuments(User user, CompanyInfo companyInfo) {
+        if (signupTransaction != null) {
+            try {
+                return signupTransaction.execute(status -> {
+                    userRepository.insert(user);
+                    return companyInfoService.insert(companyInfo);
+                });
+            } catch (DuplicateKeyException e) {
+                companyInfoService.evict(user.getId());
+                throw new IllegalArgumentException("Email already registered");
+            }
+        }
+        
+        try {
+            userRepository.insert(user);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalArgumentException("Email already registered");
+        }
+        try {
+            return companyInfoService.insert(companyInfo);
+        } catch (RuntimeException e) {
+            logger.error("Company info insert failed, removing user {}: {}", user.getId(), e.getMessage());
+            userRepository.deleteById(user.getId());
+            throw e;
+        }
+    }
+    
+    private void submitLogo(String userId, String companyInfoId, String logoExtension, byte[] logoBytes) {
+        try {
+            logoProcessingService.processLogo(userId, companyInfoId, logoExtension, logoBytes);
+        } catch (TaskRejectedException e) {
+            // Image pool is full: store the original now and skip the renditions
+            logger.warn("Image pool saturated, storing logo for company {} synchronously", companyInfoId);
+            try {
+                fileStorageService.storeContent(logoBytes, logoExtension, "logo");
+            } catch (Exception storeError) {
+                logger.warn("Failed to store company logo: {}", storeError.getMessage());
+            }
+        }
     }
     
     // Helper method to hash password (for creating users manually or via admin)
     public String hashPassword(String plainPassword) {
-        return passwordEncoder.encode(plainPassword);
+        return passwordHashingService.encode(plainPassword).join();
     }
     
-    // Get company info by userId
+    // Get company info by userId (served from the CompanyInfo cache)
     public java.util.Optional<com.invoiceapp.entity.CompanyInfo> getCompanyInfoByUserId(String userId) {
-        return companyInfoRepository.findByUserId(userId);
+        return companyInfoService.findByUserId(userId);
     }
 }
 
@@ -1,7 +1,13 @@
 package com.invoiceapp.service;
 
 import com.invoiceapp.dto.InvoiceDTO;
-import com.invoiceapp.entity.ServiceItem;
+import com.invoiceapp.entity.EmailDelivery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.annotation.Observed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -11,7 +17,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -19,6 +24,7 @@ import reactor.core.publisher.Mono;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -44,6 +51,11 @@ public class BrevoEmailService implements InitializingBean {
 
     private final WebClient brevoWebClient;
     private final FileStorageService fileStorageService;
+    private final SignedUrlService signedUrlService;
+    private final EmailDeliveryService emailDeliveryService;
+    private final EmailTemplateService emailTemplateService;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
     
     @Value("${brevo.api.key}")
     private String brevoApiKey;
@@ -56,10 +68,22 @@ public class BrevoEmailService implements InitializingBean {
     
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
+    
+    // Download links live as long as the retention sweeper keeps the file
+    @Value("${file.retention.email-link-ttl-days:7}")
+    private long downloadLinkTtlDays;
 
     @Autowired
-    public BrevoEmailService(WebClient.Builder webClientBuilder, FileStorageService fileStorageService) {
+    public BrevoEmailService(WebClient.Builder webClientBuilder, FileStorageService fileStorageService,
+                             SignedUrlService signedUrlService, EmailDeliveryService emailDeliveryService,
+                             EmailTemplateService emailTemplateService, MeterRegistry meterRegistry,
+                             ObservationRegistry observationRegistry) {
         this.fileStorageService = Objects.requireNonNull(fileStorageService, "FileStorageService cannot be null");
+        this.signedUrlService = signedUrlService;
+        this.emailDeliveryService = emailDeliveryService;
+        this.emailTemplateService = emailTemplateService;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
         this.brevoWebClient = webClientBuilder
             .baseUrl("https://api.brevo.com/v3")
             .defaultHeader("accept", "application/json")
@@ -74,8 +98,21 @@ public class BrevoEmailService implements InitializingBean {
         logger.info("BrevoEmailService initialized with sender: {} <{}>", senderName, senderEmail);
     }
 
+    /**
+     * @param delivery record to report attempts and the outcome to, or null for untracked sends
+     */
     @Async
-    public void sendInvoiceEmail(InvoiceDTO invoice, String recipientEmail) {
+    @Observed(name = "email.send", contextualName = "email-send", lowCardinalityKeyValues = {"mode", "html"})
+    public void sendInvoiceEmail(InvoiceDTO invoice, String recipientEmail, EmailDelivery delivery) {
+        try {
+            sendHtmlEmail(invoice, recipientEmail, delivery);
+        } catch (RuntimeException e) {
+            emailDeliveryService.failed(delivery, e);
+            throw e;
+        }
+    }
+
+    private void sendHtmlEmail(InvoiceDTO invoice, String recipientEmail, EmailDelivery delivery) {
         if (invoice == null) {
             throw new IllegalArgumentException("Invoice cannot be null");
         }
@@ -89,13 +126,19 @@ public class BrevoEmailService implements InitializingBean {
             while (attempt < MAX_RETRIES) {
                 try {
                     attempt++;
+                    if (attempt > 1) {
+                        retryCounter("invoice").increment();
+                    }
+                    emailDeliveryService.attempt(delivery);
                     logger.info("Sending invoice #{} to {} (attempt {}/{})", 
                         invoice.getInvoiceNumber(), recipientEmail, attempt, MAX_RETRIES);
                     
-                    Map<String, Object> response = sendEmailWithRetry(invoice, recipientEmail);
-                    String messageId = response != null ? String.valueOf(response.get("messageId")) : "unknown";
+                    Map<String, Object> response = sendEmailWithRetry(invoice, recipientEmail, tenantOf(delivery));
+                    String messageId = response != null && response.get("messageId") != null ?
+                        response.get("messageId").toString() : null;
                     logger.info("Successfully sent invoice #{} to {}. Message ID: {}", 
                         invoice.getInvoiceNumber(), recipientEmail, messageId);
+                    emailDeliveryService.sent(delivery, messageId, "html");
                     return;
                     
                 } catch (WebClientResponseException e) {
@@ -140,9 +183,22 @@ public class BrevoEmailService implements InitializingBean {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @param delivery record to report attempts and the outcome to, or null for untracked sends
+     */
     @Async
-    public void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes) {
+    @Observed(name = "email.send", contextualName = "email-send", lowCardinalityKeyValues = {"mode", "attachment"})
+    public void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes, EmailDelivery delivery) {
+        try {
+            sendPdfEmail(invoice, pdfBytes, delivery);
+        } catch (RuntimeException e) {
+            emailDeliveryService.failed(delivery, e);
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sendPdfEmail(InvoiceDTO invoice, byte[] pdfBytes, EmailDelivery delivery) {
         if (invoice == null) {
             throw new IllegalArgumentException("Invoice cannot be null");
         }
@@ -161,20 +217,20 @@ public class BrevoEmailService implements InitializingBean {
                 
             try {
                 // First try standard compression
-                byte[] compressed = compressPdf(pdfBytes);
+                byte[] compressed = observeCompression("standard", () -> compressPdf(pdfBytes));
                 
                 // If still too large, try more aggressive compression
                 if (compressed.length > MAX_PDF_SIZE_BYTES) {
                     logger.warn("Standard compression insufficient ({} KB), trying aggressive compression...", 
                         compressed.length / 1024);
-                    compressed = compressPdfAggressive(pdfBytes);
+                    compressed = observeCompression("aggressive", () -> compressPdfAggressive(pdfBytes));
                 }
                 
                 // If still too large, send download link
                 if (compressed.length > MAX_PDF_SIZE_BYTES) {
                     logger.warn("Compressed PDF still too large ({} KB), sending download link instead", 
                         compressed.length / 1024);
-                    sendEmailWithDownloadLink(invoice, compressed);
+                    sendEmailWithDownloadLink(invoice, compressed, delivery);
                     return;
                 }
                 
@@ -183,7 +239,7 @@ public class BrevoEmailService implements InitializingBean {
                 
             } catch (Exception e) {
                 logger.error("Error during PDF compression, sending download link", e);
-                sendEmailWithDownloadLink(invoice, pdfBytes);
+                sendEmailWithDownloadLink(invoice, pdfBytes, delivery);
                 return;
             }
         }
@@ -206,7 +262,7 @@ public class BrevoEmailService implements InitializingBean {
             String filename = String.format("Invoice_%s.pdf", invoice.getInvoiceNumber());
 
             // Build email content using the existing method
-            String htmlContent = buildEmailBody(invoice);
+            String htmlContent = buildEmailBody(invoice, tenantOf(delivery));
             
             // Create email request
             Map<String, Object> request = new HashMap<>();
@@ -239,9 +295,13 @@ public class BrevoEmailService implements InitializingBean {
             while (attempt < MAX_RETRIES) {
                 try {
                     attempt++;
+                    if (attempt > 1) {
+                        retryCounter("attachment").increment();
+                    }
+                    emailDeliveryService.attempt(delivery);
                     logger.debug("Sending email attempt {}/{}", attempt, MAX_RETRIES);
                     
-                    Map<String, Object> response = brevoWebClient.post()
+                    Map<String, Object> response = recordBrevoCall("attachment", () -> brevoWebClient.post()
                         .uri(BREVO_API_PATH)
                         .header("api-key", brevoApiKey)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -267,13 +327,14 @@ public class BrevoEmailService implements InitializingBean {
                                 })
                         )
                         .bodyToMono(Map.class)
-                        .block();
+                        .block());
 
                     if (response != null) {
                         String messageId = response.get("messageId") != null ? 
-                            response.get("messageId").toString() : "unknown";
+                            response.get("messageId").toString() : null;
                         logger.info("Successfully sent email with PDF attachment for invoice #{}. Message ID: {}", 
                             invoice.getInvoiceNumber(), messageId);
+                        emailDeliveryService.sent(delivery, messageId, "attachment");
                         return;
                     } else {
                         logger.warn("No response received from Brevo API for invoice #{}", invoice.getInvoiceNumber());
@@ -313,7 +374,7 @@ public class BrevoEmailService implements InitializingBean {
     }
 
     @SuppressWarnings("unchecked")
-    private Map<String, Object> sendEmailWithRetry(InvoiceDTO invoice, String recipientEmail) {
+    private Map<String, Object> sendEmailWithRetry(InvoiceDTO invoice, String recipientEmail, String tenantId) {
         try {
             if (brevoApiKey == null || brevoApiKey.trim().isEmpty()) {
                 throw new IllegalStateException("Brevo API key is not configured. Please check your application properties.");
@@ -328,13 +389,13 @@ public class BrevoEmailService implements InitializingBean {
             }
             
             // Build email request with recipient
-            Map<String, Object> emailRequest = buildEmailRequest(invoice, recipientEmail);
+            Map<String, Object> emailRequest = buildEmailRequest(invoice, recipientEmail, tenantId);
             
             if (emailRequest == null || emailRequest.isEmpty()) {
                 throw new IllegalStateException("Failed to build email request: Empty or null request");
             }
             
-            return Optional.ofNullable(brevoWebClient.post()
+            return Optional.ofNullable(recordBrevoCall("invoice", () -> brevoWebClient.post()
                     .uri(BREVO_API_PATH)
                     .contentType(MediaType.APPLICATION_JSON)
                     .header("api-key", brevoApiKey)
@@ -360,7 +421,7 @@ public class BrevoEmailService implements InitializingBean {
                             })
                     )
                     .bodyToMono(Map.class)
-                    .block())
+                    .block()))
                 .orElse(Collections.emptyMap());
         } catch (Exception e) {
             logger.error("Error sending email via Brevo API: {}", e.getMessage(), e);
@@ -368,7 +429,7 @@ public class BrevoEmailService implements InitializingBean {
         }
     }
 
-    private Map<String, Object> buildEmailRequest(InvoiceDTO invoice, String recipientEmail) {
+    private Map<String, Object> buildEmailRequest(InvoiceDTO invoice, String recipientEmail, String tenantId) {
         Map<String, Object> request = new HashMap<>();
         
         // Sender
@@ -386,111 +447,88 @@ public class BrevoEmailService implements InitializingBean {
         
         // Email content
         request.put("subject", "Your Invoice #" + invoice.getInvoiceNumber());
-        request.put("htmlContent", buildEmailBody(invoice));
+        request.put("htmlContent", buildEmailBody(invoice, tenantId));
         
         return request;
     }
 
-    private String buildEmailBody(InvoiceDTO invoice) {
+    /**
+     * @param tenantId picks the tenant's own template when it has one; null for the default
+     */
+    private String buildEmailBody(InvoiceDTO invoice, String tenantId) {
         try {
             if (invoice == null) {
                 throw new IllegalArgumentException("Invoice cannot be null");
             }
-
-            StringBuilder body = new StringBuilder();
-            body.append("<html><head><meta charset=\"UTF-8\"></head><body>");
-            body.append("<div style='max-width: 600px; margin: 0 auto; padding: 20px; font-family: Arial, sans-serif;'>");
-            body.append("<h2 style='color: #2c3e50;'>Invoice Details</h2>");
-            
-            String recipientName = StringUtils.hasText(invoice.getEmployeeName()) ? 
-                invoice.getEmployeeName() : "Valued Customer";
-            body.append("<p>Dear ").append(escapeHtml(recipientName)).append(",</p>");
-            body.append("<p>Please find your invoice details below:</p>");
-            
-            // Add invoice details
-            body.append("<table style='width: 100%; border-collapse: collapse; margin: 15px 0;'>");
-            body.append("<tr style='background-color: #f8f9fa;'>");
-            body.append("<th style='padding: 12px; border: 1px solid #ddd; text-align: left;'>Description</th>");
-            body.append("<th style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Hours</th>");
-            body.append("<th style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Rate</th>");
-            body.append("<th style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Total</th>");
-            body.append("</tr>");
-            
-            // Add service items
-            if (!CollectionUtils.isEmpty(invoice.getServices())) {
-                for (ServiceItem item : invoice.getServices()) {
-                    if (item != null) {
-                        body.append("<tr>");
-                        String description = item.getDescription() != null ? item.getDescription() : "";
-                        double hours = item.getHours() != null ? item.getHours() : 0.0;
-                        double rate = item.getRate() != null ? item.getRate() : 0.0;
-                        double total = item.getTotal() != null ? item.getTotal() : 0.0;
-                        
-                        body.append("<td style='padding: 10px; border: 1px solid #ddd;'>")
-                           .append(escapeHtml(description)).append("</td>");
-                        body.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right;'>")
-                           .append(String.format("%.2f", hours)).append("</td>");
-                        body.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right;'>")
-                           .append(String.format("%.2f", rate)).append("</td>");
-                        body.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right;'>")
-                           .append(String.format("%.2f", total)).append("</td>");
-                        body.append("</tr>");
-                    }
-                }
-            } else {
-                body.append("<tr><td colspan='4' style='padding: 10px; text-align: center;'>No services found</td></tr>");
-            }
-            
-            // Add subtotal, tax, and grand total
-            body.append("<tr style='font-weight: bold; background-color: #f8f9fa;'>");
-            body.append("<td colspan='3' style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Subtotal:</td>");
-            body.append("<td style='padding: 12px; border: 1px solid #ddd; text-align: right;'>")
-               .append(String.format("%.2f", invoice.getSubTotal())).append("</td>");
-            body.append("</tr>");
-            
-            if (invoice.getTaxRate() != null && invoice.getTaxRate() > 0) {
-                body.append("<tr style='font-weight: bold; background-color: #f8f9fa;'>");
-                body.append("<td colspan='3' style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Tax (")
-                   .append(String.format("%.2f", invoice.getTaxRate())).append("%):</td>");
-                body.append("<td style='padding: 12px; border: 1px solid #ddd; text-align: right;'>")
-                   .append(String.format("%.2f", invoice.getTaxAmount())).append("</td>");
-                body.append("</tr>");
-                
-                body.append("<tr style='font-weight: bold; background-color: #f0f0f0;'>");
-                body.append("<td colspan='3' style='padding: 12px; border: 1px solid #ddd; text-align: right;'>Grand Total:</td>");
-                body.append("<td style='padding: 12px; border: 1px solid #ddd; text-align: right;'>")
-                   .append(String.format("%.2f", invoice.getGrandTotal())).append("</td>");
-                body.append("</tr>");
-            }
-            
-            // Add payment instructions and footer
-            body.append("<div style='margin-top: 20px; padding: 15px; background-color: #f8f9fa; border-left: 4px solid #3498db;'>");
-            body.append("<h3 style='margin-top: 0; color: #2c3e50;'>Payment Instructions</h3>");
-            body.append("<p>Please make the payment to the following account details:</p>");
-            body.append("<p>Bank: [Your Bank Name]<br>");
-            body.append("Account Name: [Your Account Name]<br>");
-            body.append("Account Number: [Your Account Number]<br>");
-            body.append("Reference: Invoice #").append(invoice.getInvoiceNumber()).append("</p>");
-            body.append("</div>");
-            
-            // Add footer
-            body.append("<div style='margin-top: 30px; padding-top: 20px; border-top: 1px solid #eee; font-size: 0.9em; color: #7f8c8d;'>");
-            body.append("<p>If you have any questions about this invoice, please contact our support team at ");
-            body.append("<a href='mailto:support@example.com' style='color: #3498db; text-decoration: none;'>");
-            body.append("support@example.com</a> or call us at +1 (123) 456-7890.</p>");
-            body.append("<p>Thank you for your business!</p>");
-            body.append("</div>");
-            
-            body.append("</div>"); // Close the main container
-            body.append("</body></html>");
-            
-            return body.toString();
+            return emailTemplateService.render(EmailTemplateService.INVOICE, EmailTemplateService.invoiceModel(invoice),
+                null, tenantId);
         } catch (Exception e) {
             logger.error("Error building email body: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate email content", e);
         }
     }
 
+    /**
+     * Wraps one Brevo POST in a "brevo.request" observation (span + timer), tagged by send
+     * path and outcome. The WebClient's own http.client.requests span nests under it.
+     */
+    private <T> T recordBrevoCall(String operation, Supplier<T> call) {
+        Observation observation = Observation.createNotStarted("brevo.request", observationRegistry)
+            .contextualName("brevo-send")
+            .lowCardinalityKeyValue("operation", operation)
+            .lowCardinalityKeyValue("outcome", "success");
+        return observation.observe(() -> {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                observation.lowCardinalityKeyValue("outcome", brevoOutcome(e));
+                throw e;
+            }
+        });
+    }
+    
+    private byte[] observeCompression(String level, Supplier<byte[]> compression) {
+        return Observation.createNotStarted("pdf.compress", observationRegistry)
+            .contextualName("pdf-compress")
+            .lowCardinalityKeyValue("level", level)
+            .observe(compression);
+    }
+    
+    private String brevoOutcome(RuntimeException e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return String.valueOf(responseException.getStatusCode().value());
+        }
+        if (e instanceof SecurityException) {
+            return "unauthorized";
+        }
+        if (e instanceof IllegalStateException) {
+            return "rate_limited";
+        }
+        return "error";
+    }
+    
+    private Counter retryCounter(String operation) {
+        return Counter.builder("brevo.retries")
+            .description("Brevo send attempts after the first")
+            .tag("operation", operation)
+            .register(meterRegistry);
+    }
+    
+    private void recordCompressionRatio(String level, int originalBytes, int compressedBytes) {
+        if (originalBytes == 0) {
+            return;
+        }
+        DistributionSummary.builder("pdf.compression.ratio")
+            .description("Compressed size divided by original size")
+            .tag("level", level)
+            .register(meterRegistry)
+            .record((double) compressedBytes / originalBytes);
+    }
+
+    private static String tenantOf(EmailDelivery delivery) {
+        return delivery != null ? delivery.getTenantId() : null;
+    }
+    
     private boolean isValidEmail(String email) {
         if (email == null || email.trim().isEmpty()) {
             return false;
@@ -501,17 +539,6 @@ public class BrevoEmailService implements InitializingBean {
         return value != null ? value : "";
     }
     
-    private String escapeHtml(String input) {
-        if (input == null) {
-            return "";
-        }
-        return input.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&#39;");
-    }
-    
     /**
      * Compresses a PDF file to reduce its size using PDFBox
      * @param pdfBytes The PDF content as byte array
@@ -548,6 +575,7 @@ public class BrevoEmailService implements InitializingBean {
             document.save(baos);
             byte[] compressed = baos.toByteArray();
             
+            recordCompressionRatio("standard", pdfBytes.length, compressed.length);
             logger.info("PDF compressed from {} KB to {} KB ({}% reduction)", 
                 pdfBytes.length / 1024, 
                 compressed.length / 1024,
@@ -593,6 +621,7 @@ public class BrevoEmailService implements InitializingBean {
             document.save(baos);
             byte[] compressed = baos.toByteArray();
             
+            recordCompressionRatio("aggressive", pdfBytes.length, compressed.length);
             logger.info("Aggressive PDF compression: {} KB to {} KB ({}% reduction)", 
                 pdfBytes.length / 1024, 
                 compressed.length / 1024,
@@ -609,36 +638,19 @@ public class BrevoEmailService implements InitializingBean {
     /**
      * Sends an email with a download link to the PDF instead of an attachment
      */
-    private void sendEmailWithDownloadLink(InvoiceDTO invoice, byte[] pdfBytes) {
+    private void sendEmailWithDownloadLink(InvoiceDTO invoice, byte[] pdfBytes, EmailDelivery delivery) {
         try {
-            // Save the PDF to a temporary location
-            String filename = String.format("Invoice_%s_%d.pdf", 
-                invoice.getInvoiceNumber(), 
-                System.currentTimeMillis());
-                
-            // Store the file and get a download link
-            String fileUrl = fileStorageService.storeFile(pdfBytes, filename);
+            // Store the file and get a download link; the retention sweeper removes it after the link's lifetime
+            String fileUrl = fileStorageService.storeContent(pdfBytes, ".pdf", "email-link");
+            // PDFs are not public under /uploads; the recipient gets a signed, expiring link instead
+            String downloadUrl = baseUrl + signedUrlService.sign(fileUrl, Duration.ofDays(downloadLinkTtlDays));
             
             // Build the email content
             String subject = String.format("Invoice #%s - Download Link", invoice.getInvoiceNumber());
             
-            String htmlContent = String.format(
-                "<html><body>" +
-                "<div style='max-width: 600px; margin: 0 auto; padding: 20px; font-family: Arial, sans-serif;'>" +
-                "<h2 style='color: #2c3e50;'>Your Invoice is Ready</h2>" +
-                "<p>Dear %s,</p>" +
-                "<p>Your invoice #%s is ready for download. The file is too large to attach directly to this email.</p>" +
-                "<p><a href='%s' style='display: inline-block; padding: 10px 20px; background-color: #3498db; color: white; text-decoration: none; border-radius: 4px;'>Download Invoice</a></p>" +
-                "<p>This link will be valid for 7 days.</p>" +
-                "<p>If you have any questions, please contact our support team.</p>" +
-                "<p>Best regards,<br>%s</p>" +
-                "</div>" +
-                "</body></html>",
-                escapeHtml(invoice.getEmployeeName()),
-                invoice.getInvoiceNumber(),
-                fileUrl,
-                senderName
-            );
+            String htmlContent = emailTemplateService.render(EmailTemplateService.DOWNLOAD_LINK,
+                EmailTemplateService.downloadLinkModel(invoice, downloadUrl, downloadLinkTtlDays, senderName),
+                null, tenantOf(delivery));
             
             // Build the email request
             Map<String, Object> emailRequest = new HashMap<>();
@@ -652,17 +664,20 @@ public class BrevoEmailService implements InitializingBean {
             emailRequest.put("htmlContent", htmlContent);
             
             // Send the email
+            emailDeliveryService.attempt(delivery);
             @SuppressWarnings("unchecked")
-            Map<String, Object> response = brevoWebClient.post()
+            Map<String, Object> response = recordBrevoCall("download-link", () -> brevoWebClient.post()
                 .uri(BREVO_API_PATH)
                 .header("api-key", brevoApiKey)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(emailRequest)
                 .retrieve()
                 .bodyToMono(Map.class)
-                .block();
+                .block());
                 
             logger.info("Sent email with download link for invoice #{}", invoice.getInvoiceNumber());
+            emailDeliveryService.sent(delivery, response != null && response.get("messageId") != null ?
+                response.get("messageId").toString() : null, "download-link");
             
         } catch (Exception e) {
             logger.error("Failed to send email with download link for invoice #{}", 
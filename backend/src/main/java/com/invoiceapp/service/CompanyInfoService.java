@@ -0,0 +1,91 @@
+package com.invoiceapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.invoiceapp.entity.CompanyInfo;
+import com.invoiceapp.repository.CompanyInfoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache for company branding and bank details, keyed by userId.
+ * Writes go through save() so the local cache is refreshed immediately; other nodes
+ * pick up changes via CompanyInfoChangeStreamConfig when enabled, or after the TTL.
+ * Cached instances are shared: callers must treat them as read-only.
+ */
+@Service
+public class CompanyInfoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompanyInfoService.class);
+
+    private final CompanyInfoRepository companyInfoRepository;
+    private final Cache<String, CompanyInfo> cache;
+
+    public CompanyInfoService(CompanyInfoRepository companyInfoRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${company-info.cache.ttl-minutes:10}") long ttlMinutes,
+                              @Value("${company-info.cache.max-size:10000}") long maxSize) {
+        this.companyInfoRepository = companyInfoRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "companyInfo");
+    }
+
+    /**
+     * Misses are loaded from Mongo; a user without company info is not cached.
+     */
+    public Optional<CompanyInfo> findByUserId(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.get(userId, key -> companyInfoRepository.findByUserId(key).orElse(null)));
+    }
+
+    public CompanyInfo save(CompanyInfo companyInfo) {
+        CompanyInfo saved = companyInfoRepository.save(companyInfo);
+        if (saved.getUserId() != null) {
+            cache.put(saved.getUserId(), saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Inserts a new document (id may be pre-assigned); fails instead of overwriting.
+     */
+    public CompanyInfo insert(CompanyInfo companyInfo) {
+        CompanyInfo inserted = companyInfoRepository.insert(companyInfo);
+        if (inserted.getUserId() != null) {
+            cache.put(inserted.getUserId(), inserted);
+        }
+        return inserted;
+    }
+
+    public void evict(String userId) {
+        if (userId != null) {
+            cache.invalidate(userId);
+        }
+    }
+
+    /**
+     * Used when only the document id is known (e.g. a delete seen on the change stream).
+     */
+    public void evictById(String companyInfoId) {
+        if (companyInfoId == null) {
+            return;
+        }
+        boolean removed = cache.asMap().values().removeIf(info -> companyInfoId.equals(info.getId()));
+        if (removed) {
+            logger.debug("Evicted cached company info {}", companyInfoId);
+        }
+    }
+}
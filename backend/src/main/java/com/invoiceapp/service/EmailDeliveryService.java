@@ -0,0 +1,344 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.BrevoWebhookEvent;
+import com.invoiceapp.dto.EmailDeliveryDTO;
+import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.entity.EmailDelivery;
+import com.invoiceapp.entity.EmailMessageStatus;
+import com.invoiceapp.repository.EmailDeliveryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks invoice emails from the send request to what Brevo reports afterwards.
+ * The sender records each transition on the EmailDelivery it was handed; a failing write
+ * is logged and never fails the send itself. Webhook events are written to
+ * EmailMessageStatus with one unordered bulk upsert per request, folded per message first.
+ */
+@Service
+public class EmailDeliveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailDeliveryService.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    // Brevo event name -> EmailMessageStatus field holding the time it first happened
+    private static final Map<String, String> EVENT_FIELDS = Map.ofEntries(
+            Map.entry("delivered", "deliveredAt"),
+            Map.entry("opened", "openedAt"),
+            Map.entry("unique_opened", "openedAt"),
+            Map.entry("proxy_open", "openedAt"),
+            Map.entry("unique_proxy_open", "openedAt"),
+            Map.entry("click", "clickedAt"),
+            Map.entry("deferred", "deferredAt"),
+            Map.entry("soft_bounce", "softBouncedAt"),
+            Map.entry("hard_bounce", "bouncedAt"),
+            Map.entry("invalid_email", "bouncedAt"),
+            Map.entry("blocked", "blockedAt"),
+            Map.entry("spam", "spamAt"),
+            Map.entry("error", "errorAt"));
+
+    private static final Set<EmailDelivery.Status> SUCCESSFUL = EnumSet.of(
+            EmailDelivery.Status.DELIVERED, EmailDelivery.Status.OPENED, EmailDelivery.Status.CLICKED);
+
+    private final EmailDeliveryRepository emailDeliveryRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Duration retention;
+    private final byte[] webhookToken;
+
+    public EmailDeliveryService(EmailDeliveryRepository emailDeliveryRepository,
+                                MongoTemplate mongoTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${email.tracking.retention-days:180}") long retentionDays,
+                                @Value("${brevo.webhook.token:}") String webhookToken) {
+        this.emailDeliveryRepository = emailDeliveryRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.retention = Duration.ofDays(retentionDays);
+        this.webhookToken = StringUtils.hasText(webhookToken) ? webhookToken.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Records a send before it is handed to the email pool, so the caller can report its id.
+     */
+    public EmailDelivery queue(InvoiceDTO invoice, String mode) {
+        LocalDateTime now = LocalDateTime.now();
+        EmailDelivery delivery = new EmailDelivery();
+        delivery.setInvoiceId(invoice.getId());
+        delivery.setInvoiceNumber(invoice.getInvoiceNumber());
+        delivery.setRecipient(invoice.getEmployeeEmail());
+        delivery.setMode(mode);
+        delivery.setStatus(EmailDelivery.Status.QUEUED);
+        delivery.setTenantId(InvoiceService.currentTenantId());
+        delivery.setCreatedBy(InvoiceService.currentUserId());
+        delivery.setCreatedAt(now);
+        delivery.setUpdatedAt(now);
+        delivery.setExpiresAt(now.plus(retention));
+        return emailDeliveryRepository.insert(delivery);
+    }
+
+    /**
+     * Called before each call to Brevo.
+     */
+    public void attempt(EmailDelivery delivery) {
+        if (delivery == null) {
+            return;
+        }
+        delivery.setAttempts(delivery.getAttempts() + 1);
+        delivery.setStatus(EmailDelivery.Status.SENDING);
+        update(delivery, new Update()
+                .set("status", EmailDelivery.Status.SENDING)
+                .set("attempts", delivery.getAttempts()));
+    }
+
+    /**
+     * Brevo accepted the message.
+     * @param mode how it was finally sent; an attachment can end up as a download link
+     */
+    public void sent(EmailDelivery delivery, String messageId, String mode) {
+        if (delivery == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long latencyMs = Duration.between(delivery.getCreatedAt(), now).toMillis();
+        delivery.setStatus(EmailDelivery.Status.SENT);
+        delivery.setMessageId(messageId);
+        delivery.setMode(mode);
+        delivery.setSentAt(now);
+        delivery.setLatencyMs(latencyMs);
+        Timer.builder("email.delivery.latency")
+                .description("Time from queueing an invoice email to Brevo accepting it")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(Duration.ofMillis(latencyMs));
+        meterRegistry.counter("email.delivery", "status", "sent").increment();
+        update(delivery, new Update()
+                .set("status", EmailDelivery.Status.SENT)
+                .set("messageId", messageId)
+                .set("mode", mode)
+                .set("sentAt", now)
+                .set("latencyMs", latencyMs));
+    }
+
+    /**
+     * The send gave up; a later retry by the user creates a new delivery.
+     */
+    public void failed(EmailDelivery delivery, Throwable error) {
+        if (delivery == null || delivery.getStatus() == EmailDelivery.Status.FAILED) {
+            return;
+        }
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (message.length() > MAX_ERROR_LENGTH) {
+            message = message.substring(0, MAX_ERROR_LENGTH);
+        }
+        delivery.setStatus(EmailDelivery.Status.FAILED);
+        delivery.setLastError(message);
+        meterRegistry.counter("email.delivery", "status", "failed").increment();
+        update(delivery, new Update()
+                .set("status", EmailDelivery.Status.FAILED)
+                .set("lastError", message));
+    }
+
+    private void update(EmailDelivery delivery, Update update) {
+        LocalDateTime now = LocalDateTime.now();
+        delivery.setUpdatedAt(now);
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(delivery.getId())),
+                    update.set("updatedAt", now), EmailDelivery.class);
+        } catch (RuntimeException e) {
+            logger.warn("Could not record email delivery {} as {}: {}", delivery.getId(), delivery.getStatus(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the send, if it belongs to the signed-in tenant
+     */
+    public Optional<EmailDeliveryDTO> getDelivery(String deliveryId) {
+        return emailDeliveryRepository.findByTenantIdAndId(InvoiceService.currentTenantId(), deliveryId).map(delivery -> toDTO(delivery,
+                delivery.getMessageId() != null
+                        ? mongoTemplate.findById(delivery.getMessageId(), EmailMessageStatus.class) : null));
+    }
+
+    /**
+     * @return the signed-in tenant's sends for the invoice, newest first
+     */
+    public List<EmailDeliveryDTO> getDeliveriesForInvoice(String invoiceId) {
+        List<EmailDelivery> deliveries = emailDeliveryRepository.findByTenantIdAndInvoiceIdOrderByCreatedAtDesc(
+                InvoiceService.currentTenantId(), invoiceId);
+        List<String> messageIds = deliveries.stream()
+                .map(EmailDelivery::getMessageId)
+                .filter(Objects::nonNull)
+                .toList();
+        Map<String, EmailMessageStatus> statuses = messageIds.isEmpty() ? Map.of()
+                : mongoTemplate.find(Query.query(Criteria.where("_id").in(messageIds)), EmailMessageStatus.class)
+                        .stream()
+                        .collect(Collectors.toMap(EmailMessageStatus::getId, Function.identity()));
+        return deliveries.stream()
+                .map(delivery -> toDTO(delivery, statuses.get(delivery.getMessageId())))
+                .toList();
+    }
+
+    public boolean isWebhookEnabled() {
+        return webhookToken != null;
+    }
+
+    public boolean isWebhookTokenValid(String token) {
+        return webhookToken != null && token != null
+                && MessageDigest.isEqual(webhookToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Applies a batch of webhook events with a single bulk write.
+     * @return number of events applied; unknown event types and events without a message id are skipped
+     */
+    public int ingest(List<BrevoWebhookEvent> events) {
+        Map<String, MessageEvents> byMessage = new LinkedHashMap<>();
+        int applied = 0;
+        for (BrevoWebhookEvent event : events) {
+            String field = event.getEvent() != null ? EVENT_FIELDS.get(event.getEvent()) : null;
+            if (field == null || !StringUtils.hasText(event.getMessageId())) {
+                meterRegistry.counter("email.webhook.events", "event", "ignored").increment();
+                continue;
+            }
+            meterRegistry.counter("email.webhook.events", "event", event.getEvent()).increment();
+            byMessage.computeIfAbsent(event.getMessageId(), id -> new MessageEvents()).add(field, event);
+            applied++;
+        }
+        if (byMessage.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EmailMessageStatus.class);
+        byMessage.forEach((messageId, message) -> {
+            // $min/$max keep the first time of each event whatever order or how often they arrive
+            Update update = new Update()
+                    .max("lastEventAt", message.last)
+                    .set("updatedAt", now)
+                    .set("expiresAt", now.plus(retention));
+            message.firstAt.forEach(update::min);
+            if (message.recipient != null) {
+                update.setOnInsert("recipient", message.recipient);
+            }
+            if (message.reason != null) {
+                update.set("reason", message.reason);
+            }
+            bulk.upsert(Query.query(Criteria.where("_id").is(messageId)), update);
+        });
+        bulk.execute();
+        return applied;
+    }
+
+    public static EmailDeliveryDTO toDTO(EmailDelivery delivery) {
+        return toDTO(delivery, null);
+    }
+
+    static EmailDeliveryDTO toDTO(EmailDelivery delivery, EmailMessageStatus message) {
+        EmailDeliveryDTO dto = new EmailDeliveryDTO();
+        dto.setId(delivery.getId());
+        dto.setInvoiceId(delivery.getInvoiceId());
+        dto.setInvoiceNumber(delivery.getInvoiceNumber());
+        dto.setRecipient(delivery.getRecipient());
+        dto.setMode(delivery.getMode());
+        EmailDelivery.Status status = statusOf(delivery, message);
+        dto.setStatus(status);
+        dto.setMessageId(delivery.getMessageId());
+        dto.setAttempts(delivery.getAttempts());
+        dto.setLatencyMs(delivery.getLatencyMs());
+        // A bounce or block reason only matters while that is the outcome
+        dto.setError(message != null && message.getReason() != null && !SUCCESSFUL.contains(status)
+                ? message.getReason() : delivery.getLastError());
+        dto.setCreatedAt(toString(delivery.getCreatedAt()));
+        dto.setSentAt(toString(delivery.getSentAt()));
+        dto.setUpdatedAt(toString(message != null && message.getUpdatedAt() != null
+                && message.getUpdatedAt().isAfter(delivery.getUpdatedAt()) ? message.getUpdatedAt() : delivery.getUpdatedAt()));
+        if (message != null) {
+            dto.setDeliveredAt(toString(message.getDeliveredAt()));
+            dto.setOpenedAt(toString(message.getOpenedAt()));
+            dto.setBouncedAt(toString(message.getBouncedAt() != null ? message.getBouncedAt() : message.getSoftBouncedAt()));
+        }
+        return dto;
+    }
+
+    /**
+     * The most significant thing known about the message, whatever order events came in.
+     */
+    private static EmailDelivery.Status statusOf(EmailDelivery delivery, EmailMessageStatus message) {
+        if (message == null) {
+            return delivery.getStatus();
+        }
+        return message.getSpamAt() != null ? EmailDelivery.Status.SPAM
+                : message.getBouncedAt() != null ? EmailDelivery.Status.BOUNCED
+                : message.getBlockedAt() != null ? EmailDelivery.Status.BLOCKED
+                : message.getClickedAt() != null ? EmailDelivery.Status.CLICKED
+                : message.getOpenedAt() != null ? EmailDelivery.Status.OPENED
+                : message.getDeliveredAt() != null ? EmailDelivery.Status.DELIVERED
+                : message.getSoftBouncedAt() != null ? EmailDelivery.Status.SOFT_BOUNCED
+                : message.getDeferredAt() != null ? EmailDelivery.Status.DEFERRED
+                : message.getErrorAt() != null ? EmailDelivery.Status.FAILED
+                : delivery.getStatus();
+    }
+
+    private static String toString(LocalDateTime time) {
+        return time != null ? time.toString() : null;
+    }
+
+    /**
+     * Events of one message within a webhook batch.
+     */
+    private static final class MessageEvents {
+        private final Map<String, LocalDateTime> firstAt = new HashMap<>();
+        private LocalDateTime last;
+        private String recipient;
+        private String reason;
+
+        private void add(String field, BrevoWebhookEvent event) {
+            LocalDateTime at = eventTime(event);
+            firstAt.merge(field, at, (a, b) -> a.isBefore(b) ? a : b);
+            if (last == null || at.isAfter(last)) {
+                last = at;
+                if (StringUtils.hasText(event.getReason())) {
+                    reason = event.getReason();
+                }
+            }
+            if (recipient == null) {
+                recipient = event.getEmail();
+            }
+        }
+
+        private static LocalDateTime eventTime(BrevoWebhookEvent event) {
+            Instant instant = event.getTsEpoch() != null ? Instant.ofEpochMilli(event.getTsEpoch())
+                    : event.getTsEvent() != null ? Instant.ofEpochSecond(event.getTsEvent())
+                    : Instant.now();
+            return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        }
+    }
+}
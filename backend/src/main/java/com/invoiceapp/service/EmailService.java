@@ -1,10 +1,13 @@
 package com.invoiceapp.service;
 
 import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.entity.EmailDelivery;
 
 
 public interface EmailService {
-    void sendInvoiceEmail(InvoiceDTO invoice);
-    void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes);
+    /**
+     * @param delivery record the send reports its progress to, or null for untracked sends
+     */
+    void sendInvoiceEmail(InvoiceDTO invoice, EmailDelivery delivery);
+    void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes, EmailDelivery delivery);
 }
-
@@ -1,14 +1,19 @@
 // src/main/java/com/invoiceapp/service/EmailServiceImpl.java
 package com.invoiceapp.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.entity.EmailDelivery;
 
 @Service
 public class EmailServiceImpl implements EmailService {
     
+    private static final Logger logger = LoggerFactory.getLogger(EmailServiceImpl.class);
+    
     @Autowired
     private BrevoEmailService brevoEmailService;
     
@@ -19,32 +24,26 @@ public class EmailServiceImpl implements EmailService {
     private String fromName;
     
     @Override
-    public void sendInvoiceEmail(InvoiceDTO invoice) {
+    public void sendInvoiceEmail(InvoiceDTO invoice, EmailDelivery delivery) {
         try {
-            System.out.println("=== Email Configuration ===");
-            System.out.println("From Email: " + fromEmail);
-            System.out.println("To Email: " + invoice.getEmployeeEmail());
-            System.out.println("========================");
+            logger.debug("Sending invoice email from {} to {}", fromEmail, invoice.getEmployeeEmail());
             
-            brevoEmailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail());
+            brevoEmailService.sendInvoiceEmail(invoice, invoice.getEmployeeEmail(), delivery);
         } catch (Exception e) {
-            System.err.println("Error sending email: " + e.getMessage());
+            logger.error("Error sending email: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to send email: " + e.getMessage(), e);
         }
     }
 
     @Override
-    public void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes) {
+    public void sendInvoiceEmailWithPdf(InvoiceDTO invoice, byte[] pdfBytes, EmailDelivery delivery) {
         try {
-            System.out.println("=== Sending Email with PDF Attachment ===");
-            System.out.println("From: " + fromEmail);
-            System.out.println("To: " + invoice.getEmployeeEmail());
-            System.out.println("PDF Size: " + (pdfBytes != null ? pdfBytes.length : 0) + " bytes");
-            System.out.println("===============================");
+            logger.debug("Sending invoice email with PDF attachment from {} to {} ({} bytes)",
+                fromEmail, invoice.getEmployeeEmail(), pdfBytes != null ? pdfBytes.length : 0);
             
-            brevoEmailService.sendInvoiceEmailWithPdf(invoice, pdfBytes);
+            brevoEmailService.sendInvoiceEmailWithPdf(invoice, pdfBytes, delivery);
         } catch (Exception e) {
-            System.err.println("Error sending email with PDF: " + e.getMessage());
+            logger.error("Error sending email with PDF: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to send email with PDF: " + e.getMessage(), e);
         }
     }
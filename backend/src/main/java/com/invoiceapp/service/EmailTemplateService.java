@@ -0,0 +1,246 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.entity.ServiceItem;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTML bodies of outgoing emails, from the FreeMarker templates under classpath:/email-templates.
+ * Every template is parsed once at startup for each configured locale (invoice_de.ftlh is
+ * picked for "de" when present) and for each tenant with its own copy under
+ * email-templates/&lt;tenant&gt;/. A send only walks the parsed template: the static markup,
+ * inline CSS included, is kept as prepared text and written in one piece per run, and model
+ * values are HTML-escaped by the .ftlh output format. A template that does not parse stops
+ * startup rather than the first send.
+ */
+@Service
+public class EmailTemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailTemplateService.class);
+
+    public static final String INVOICE = "invoice";
+    public static final String DOWNLOAD_LINK = "download-link";
+
+    private static final String LOCATION = "email-templates";
+    private static final String SUFFIX = ".ftlh";
+    private static final List<String> NAMES = List.of(INVOICE, DOWNLOAD_LINK);
+    private static final int INITIAL_BUFFER = 4096;
+
+    // Keyed by key(tenant, name, locale); never changes after construction
+    private final Map<String, Template> templates = new HashMap<>();
+    // Largest body rendered so far per template, so the buffer is sized right the first time
+    private final Map<Template, Integer> sizeHints = new ConcurrentHashMap<>();
+    private final Locale defaultLocale;
+
+    public EmailTemplateService(@Value("${email.templates.locales:en}") List<String> locales) throws IOException {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setClassLoaderForTemplateLoading(getClass().getClassLoader(), LOCATION);
+        configuration.setDefaultEncoding("UTF-8");
+        // Amounts arrive formatted (see amount()); anything else numeric is printed as is
+        configuration.setNumberFormat("computer");
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setLogTemplateExceptions(false);
+        // Nothing is looked up after startup
+        configuration.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+
+        List<Locale> compiledLocales = new ArrayList<>();
+        for (String tag : locales) {
+            if (StringUtils.hasText(tag)) {
+                compiledLocales.add(Locale.forLanguageTag(tag.trim()));
+            }
+        }
+        if (compiledLocales.isEmpty()) {
+            compiledLocales.add(Locale.ENGLISH);
+        }
+        this.defaultLocale = compiledLocales.get(0);
+
+        Set<String> tenants = findTenants();
+        for (String name : NAMES) {
+            for (Locale locale : compiledLocales) {
+                Template template = configuration.getTemplate(name + SUFFIX, locale);
+                templates.put(key(null, name, locale), template);
+                for (String tenant : tenants) {
+                    Template own = configuration.getTemplate(tenant + "/" + name + SUFFIX, locale, null, null, true, true);
+                    if (own != null) {
+                        templates.put(key(tenant, name, locale), own);
+                    }
+                }
+            }
+        }
+        logger.info("Compiled {} email templates for locales {} and tenants {}", templates.size(), compiledLocales, tenants);
+    }
+
+    public String render(String name, Map<String, ?> model) {
+        return render(name, model, null, null);
+    }
+
+    /**
+     * @param locale falls back to the language alone, then to the first configured locale
+     * @param tenant uses the tenant's own template when it has one
+     */
+    public String render(String name, Map<String, ?> model, Locale locale, String tenant) {
+        Template template = resolve(name, locale != null ? locale : defaultLocale, tenant);
+        BodyWriter out = new BodyWriter(sizeHints.getOrDefault(template, INITIAL_BUFFER));
+        try {
+            template.process(model, out);
+        } catch (TemplateException | IOException e) {
+            throw new IllegalStateException("Could not render email template " + name + ": " + e.getMessage(), e);
+        }
+        String html = out.body.toString();
+        sizeHints.merge(template, html.length(), Math::max);
+        return html;
+    }
+
+    private Template resolve(String name, Locale locale, String tenant) {
+        Locale language = Locale.forLanguageTag(locale.getLanguage());
+        for (String owner : tenant != null ? new String[] {tenant, null} : new String[] {null}) {
+            for (Locale candidate : new Locale[] {locale, language, defaultLocale}) {
+                Template template = templates.get(key(owner, name, candidate));
+                if (template != null) {
+                    return template;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown email template: " + name);
+    }
+
+    private static String key(String tenant, String name, Locale locale) {
+        return (tenant != null ? tenant + "/" : "") + name + "_" + locale.toLanguageTag();
+    }
+
+    /**
+     * Tenants are the subdirectories of email-templates holding at least one template.
+     */
+    private static Set<String> findTenants() throws IOException {
+        Set<String> tenants = new TreeSet<>();
+        Resource[] resources = new PathMatchingResourcePatternResolver()
+                .getResources("classpath*:" + LOCATION + "/*/*" + SUFFIX);
+        for (Resource resource : resources) {
+            String path = resource.getURL().getPath();
+            int file = path.lastIndexOf('/');
+            int dir = path.lastIndexOf('/', file - 1);
+            if (dir >= 0) {
+                tenants.add(path.substring(dir + 1, file));
+            }
+        }
+        return tenants;
+    }
+
+    /**
+     * Model for {@link #INVOICE}. Throws like InvoiceDTO.getSubTotal() when the invoice has no service list.
+     */
+    static Map<String, Object> invoiceModel(InvoiceDTO invoice) {
+        List<Map<String, Object>> services = new ArrayList<>();
+        if (invoice.getServices() != null) {
+            for (ServiceItem item : invoice.getServices()) {
+                if (item != null) {
+                    services.add(Map.of(
+                            "description", Objects.toString(item.getDescription(), ""),
+                            "hours", amount(item.getHours()),
+                            "rate", amount(item.getRate()),
+                            "total", amount(item.getTotal())));
+                }
+            }
+        }
+        double taxRate = invoice.getTaxRate() != null ? invoice.getTaxRate() : 0.0;
+        Map<String, Object> model = new HashMap<>();
+        model.put("recipientName", recipientName(invoice));
+        model.put("invoiceNumber", Objects.toString(invoice.getInvoiceNumber(), ""));
+        model.put("services", services);
+        model.put("subTotal", amount(invoice.getSubTotal()));
+        if (taxRate > 0) {
+            model.put("taxRate", amount(taxRate));
+            model.put("taxAmount", amount(invoice.getTaxAmount()));
+            model.put("grandTotal", amount(invoice.getGrandTotal()));
+        }
+        return model;
+    }
+
+    /**
+     * Model for {@link #DOWNLOAD_LINK}.
+     */
+    static Map<String, Object> downloadLinkModel(InvoiceDTO invoice, String downloadUrl, long validDays, String senderName) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("recipientName", recipientName(invoice));
+        model.put("invoiceNumber", Objects.toString(invoice.getInvoiceNumber(), ""));
+        model.put("downloadUrl", downloadUrl);
+        model.put("validDays", validDays);
+        model.put("senderName", Objects.toString(senderName, ""));
+        return model;
+    }
+
+    /**
+     * Two decimals, rounded half-up from the shortest decimal form like String.format("%.2f")
+     * but without its locale and format-string parsing. Formatting here is also much cheaper
+     * than through FreeMarker, which sets up a DecimalFormat for every render.
+     */
+    static String amount(Double value) {
+        return value != null ? BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString() : "0.00";
+    }
+
+    private static String recipientName(InvoiceDTO invoice) {
+        return StringUtils.hasText(invoice.getEmployeeName()) ? invoice.getEmployeeName() : "Valued Customer";
+    }
+
+    /**
+     * StringWriter without the StringBuffer locking: a render is confined to one thread and
+     * writes the body in a few hundred pieces.
+     */
+    private static final class BodyWriter extends Writer {
+        private final StringBuilder body;
+
+        BodyWriter(int capacity) {
+            this.body = new StringBuilder(capacity);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            body.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String text) {
+            body.append(text);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            body.append(text, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            body.append((char) c);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,168 @@
+package com.invoiceapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes stored files to the response with conditional GET (ETag / Last-Modified) and
+ * single byte-range support, so interrupted downloads resume where they stopped.
+ * Bodies are handed to Tomcat's sendfile when the connector offers it, letting the kernel
+ * copy file pages straight to the socket; otherwise FileChannel.transferTo streams them
+ * without staging the file in a heap buffer. Remote backends (S3) are streamed with a
+ * ranged read of just the requested bytes.
+ */
+@Service
+public class FileDownloadService {
+
+    // Request attributes understood by Tomcat's NIO/NIO2 connectors
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final FileStorageService fileStorageService;
+    private final MeterRegistry meterRegistry;
+    private final long sendfileMinBytes;
+
+    public FileDownloadService(FileStorageService fileStorageService,
+                               MeterRegistry meterRegistry,
+                               @Value("${file.download.sendfile-min-bytes:49152}") long sendfileMinBytes) {
+        this.fileStorageService = fileStorageService;
+        this.meterRegistry = meterRegistry;
+        this.sendfileMinBytes = sendfileMinBytes;
+    }
+
+    public void serve(FileStorageService.FileMetadata metadata, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        serve(metadata, request, response, true);
+    }
+
+    /**
+     * @param attachment false to let the browser display the file inline (images)
+     */
+    public void serve(FileStorageService.FileMetadata metadata, HttpServletRequest request,
+                      HttpServletResponse response, boolean attachment) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Answers If-None-Match / If-Modified-Since with 304 and sets ETag and Last-Modified either way
+        if (new ServletWebRequest(request, response).checkNotModified(metadata.getEtag(), metadata.getLastModified())) {
+            return;
+        }
+
+        long size = metadata.getSize();
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && size > 0 && ifRangeMatches(request, metadata)) {
+            List<HttpRange> ranges = parseRanges(rangeHeader);
+            // Multiple ranges would need a multipart body; sending the whole file is also valid
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+                if (start >= size || start > end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return;
+                }
+                partial = true;
+            }
+        }
+
+        long length = end - start + 1;
+        response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        if (partial) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        response.setContentType(metadata.getContentType());
+        ContentDisposition disposition = attachment ? ContentDisposition.attachment().filename(metadata.getFilename()).build()
+                : ContentDisposition.inline().filename(metadata.getFilename()).build();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        response.setContentLengthLong(length);
+
+        if (length == 0 || "HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        Optional<Path> localFile = fileStorageService.localFile(metadata);
+        if (localFile.isEmpty()) {
+            // Remote backend: stream the (ranged) object through
+            try (InputStream in = fileStorageService.openStream(metadata, start, length)) {
+                in.transferTo(response.getOutputStream());
+            }
+            meterRegistry.counter("file.download", "transfer", "stream").increment();
+            return;
+        }
+
+        Path path = localFile.get();
+        if (length >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            meterRegistry.counter("file.download", "transfer", "sendfile").increment();
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break; // file shorter than its cached size
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+        meterRegistry.counter("file.download", "transfer", "channel").increment();
+    }
+
+    /**
+     * A Range is only honoured when If-Range is absent or still names the current file:
+     * a strong ETag must match exactly, a date must not be older than the file.
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, FileStorageService.FileMetadata metadata) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return metadata.hasStrongEtag() && ifRange.equals(metadata.getEtag());
+        }
+        try {
+            return metadata.getLastModified() / 1000 <= request.getDateHeader(HttpHeaders.IF_RANGE) / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored rather than rejected
+            return List.of();
+        }
+    }
+}
@@ -1,82 +1,128 @@
 package com.invoiceapp.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.invoiceapp.entity.StoredFile;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
 
+/**
+ * Content-addressed file store. A file is named by the SHA-256 of its bytes plus its
+ * extension and lives two fan-out levels deep ("9f/86/9f86d0...png"), so no directory
+ * grows past a few thousand entries and identical uploads are kept once.
+ * Content is written to a temp file under the upload directory first and then handed to
+ * the StorageBackend (local disk or S3), so readers never see a partial file. Each store
+ * adds a reference on the file's StoredFile record.
+ * Flat files written before this layout are still resolved and served.
+ */
 @Service
 public class FileStorageService {
     
+    private static final String URL_PREFIX = "/uploads/";
+    private static final String TEMP_DIR = ".tmp";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final Pattern CONTENT_NAME = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,8})?");
+    private static final Pattern EXTENSION = Pattern.compile("\\.[A-Za-z0-9]{1,8}");
+    // Outlasts any single backend delete; a store only waits this long if the sweeper died mid-reclaim
+    private static final Duration RECLAIM_LEASE = Duration.ofMinutes(1);
+    private static final long RECLAIM_WAIT_MILLIS = 25;
+    
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
     
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private StorageBackend storageBackend;
+    
+    @Value("${file.upload.max-bytes:10485760}")
+    private long maxUploadBytes;
+    
+    @Value("${file.metadata.cache.max-size:10000}")
+    private long metadataCacheMaxSize;
+    
+    @Value("${file.metadata.cache.ttl-minutes:10}")
+    private long metadataCacheTtlMinutes;
+    
+    // Content-addressed files never change, so their metadata only leaves the cache by size or TTL
+    private Cache<String, FileMetadata> metadataCache;
+    
     private static final Logger logger = LoggerFactory.getLogger(FileStorageService.class);
     
+    @PostConstruct
+    public void initMetadataCache() {
+        metadataCache = Caffeine.newBuilder()
+            .maximumSize(metadataCacheMaxSize)
+            .expireAfterWrite(Duration.ofMinutes(metadataCacheTtlMinutes))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, metadataCache, "fileMetadata");
+    }
+    
     public String storePdf(byte[] pdfContent, String filename, String userId) throws IOException {
         if (pdfContent == null || pdfContent.length == 0) {
             throw new IllegalArgumentException("PDF content cannot be null or empty");
         }
-        
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-        
-        // Generate unique filename if not provided
-        String uniqueFilename = "pdf_" + userId + "_" + 
-            (filename != null ? filename : UUID.randomUUID().toString() + ".pdf");
-        
-        // Save file
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.write(filePath, pdfContent);
-        
-        // Return relative URL path
-        return "/uploads/" + uniqueFilename;
+        return storeContent(pdfContent, ".pdf", "pdf");
     }
     
     public String storeFile(MultipartFile file, String userId) throws IOException {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File cannot be null or empty");
         }
-
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+        // The multipart part is already spooled to disk; stream it rather than loading it into the heap.
+        // A generic upload like /upload/stream, so it is kept per upload-ttl-days, not as an orphaned logo
+        try (InputStream content = file.getInputStream()) {
+            return storeStream(content, extensionOf(file.getOriginalFilename()), "file", maxUploadBytes);
         }
-
-        // Get original filename and extension
-        String originalFilename = file.getOriginalFilename();
-        String fileExtension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        }
-
-        // Generate unique filename
-        String uniqueFilename = "logo_" + userId + "_" + UUID.randomUUID().toString() + fileExtension;
-
-        // Save file
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
-        // Return relative URL path
-        return "/uploads/" + uniqueFilename;
     }
     
     /**
      * Stores a file from a byte array
      * @param fileBytes The file content as a byte array
-     * @param filename The name to give to the file (can include extension)
+     * @param filename The original name; only its extension is kept
      * @return The relative URL path to the stored file
      * @throws IOException If an I/O error occurs
      */
@@ -87,73 +133,390 @@ public class FileStorageService {
         if (filename == null || filename.trim().isEmpty()) {
             throw new IllegalArgumentException("Filename cannot be null or empty");
         }
-
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+        return storeContent(fileBytes, extensionOf(filename), "file");
+    }
+    
+    /**
+     * Writes content under its content address and adds a reference to it. If the same bytes
+     * were stored before, nothing is written and the existing file's URL is returned.
+     * @param extension e.g. ".png", or "" for none (see extensionOf)
+     * @param kind metrics tag, e.g. "logo" or "rendition"
+     * @return The relative URL path to the stored file
+     */
+    public String storeContent(byte[] content, String extension, String kind) throws IOException {
+        if (content == null || content.length == 0) {
+            throw new IllegalArgumentException("File content cannot be null or empty");
         }
-
-        // Generate unique filename
-        String uniqueFilename = "file_" + UUID.randomUUID().toString() + "_" + filename;
-
-        // Save file
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.write(filePath, fileBytes);
+        String name = contentName(content, extension);
+        String key = keyFor(name);
         
-        // Log the file storage details
-        logger.info("File stored successfully at: {}", filePath.toAbsolutePath());
-        logger.info("File size: {} bytes", fileBytes.length);
-        logger.info("File will be accessible at: /uploads/{}", uniqueFilename);
+        // Reference first: while a reclaim of this content runs, addReference waits for it
+        boolean mustWrite = addReference(name, content.length, kind);
+        if (!mustWrite && storageBackend.exists(key)) {
+            meterRegistry.counter("file.storage.deduplicated", "kind", kind).increment();
+        } else {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            Path temp = Files.createTempFile(tempDirectory(), "upload-", ".part");
+            try {
+                Files.write(temp, content);
+                storageBackend.put(key, temp, content.length, contentTypeOf(name));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            recordWrite(sample, kind, content.length);
+        }
+        return toUrl(name);
+    }
+    
+    /**
+     * Streams content into the store without holding it in memory. Bytes are hashed and
+     * counted on their way into a temp file on the upload volume, which is then renamed to
+     * its content address, or dropped if that content is already stored.
+     * The caller keeps ownership of the stream.
+     * @throws FileTooLargeException as soon as more than maxBytes have been read
+     * @return The relative URL path to the stored file
+     */
+    public String storeStream(InputStream content, String extension, String kind, long maxBytes) throws IOException {
+        Path temp = Files.createTempFile(tempDirectory(), "upload-", ".part");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            MessageDigest digest = sha256();
+            long size = 0;
+            ReadableByteChannel in = Channels.newChannel(content);
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new FileTooLargeException(maxBytes);
+                    }
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            if (size == 0) {
+                throw new IllegalArgumentException("File content cannot be null or empty");
+            }
+            
+            String name = HexFormat.of().formatHex(digest.digest()) + (extension == null ? "" : extension);
+            String key = keyFor(name);
+            boolean mustWrite = addReference(name, size, kind);
+            if (!mustWrite && storageBackend.exists(key)) {
+                meterRegistry.counter("file.storage.deduplicated", "kind", kind).increment();
+            } else {
+                storageBackend.put(key, temp, size, contentTypeOf(name));
+                recordWrite(sample, kind, size);
+            }
+            return toUrl(name);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+    
+    /**
+     * URL the content will be served under once stored. Lets callers hand out the URL
+     * before the (possibly background) write happens.
+     */
+    public String contentUrl(byte[] content, String extension) {
+        return toUrl(contentName(content, extension));
+    }
+    
+    /**
+     * Drops one reference to a stored file. Files at zero references stay on disk until
+     * they are reclaimed, so a concurrent store of the same content never loses its file.
+     */
+    public void release(String url) {
+        String name = storedName(url);
+        if (!CONTENT_NAME.matcher(name).matches()) {
+            return;
+        }
+        mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(name).and("refCount").gt(0)),
+            new Update().inc("refCount", -1).set("lastReferencedAt", LocalDateTime.now()),
+            StoredFile.class);
+    }
+    
+    /**
+     * Deletes a content-addressed file if its record still matches the given condition
+     * (e.g. still expired). The record is leased first (reclaimingUntil): stores of the same
+     * content wait for the lease rather than deduplicating against a file about to go, and
+     * take over a lease that expired. The backend deletes only while the lease still holds
+     * (the local one renames the file aside first), and the record is removed only then.
+     * @return true if the file was deleted
+     */
+    public boolean reclaim(String name, Criteria stillReclaimable) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        // Millisecond precision, as stored, so the lease can be matched exactly
+        LocalDateTime leaseUntil = now.plus(RECLAIM_LEASE).truncatedTo(ChronoUnit.MILLIS);
+        Query claim = Query.query(new Criteria().andOperator(
+            Criteria.where("_id").is(name).orOperator(unleased(now)), stillReclaimable));
+        if (mongoTemplate.updateFirst(claim, new Update().set("reclaimingUntil", leaseUntil), StoredFile.class)
+                .getModifiedCount() == 0) {
+            return false;
+        }
+        metadataCache.invalidate(name);
+        Query leased = Query.query(Criteria.where("_id").is(name).and("reclaimingUntil").is(leaseUntil));
+        boolean deleted = storageBackend.reclaim(keyFor(name),
+            () -> LocalDateTime.now().isBefore(leaseUntil) && mongoTemplate.exists(leased, StoredFile.class));
+        // No-op if a store took the record over
+        mongoTemplate.remove(leased, StoredFile.class);
+        return deleted;
+    }
+    
+    /**
+     * Deletes a file written before the content-addressed layout (directly under the upload directory).
+     */
+    public boolean deleteLegacyFile(String storedName) throws IOException {
+        if (CONTENT_NAME.matcher(storedName).matches() || storedName.contains("/")) {
+            throw new IllegalArgumentException("Not a legacy file name: " + storedName);
+        }
+        metadataCache.invalidate(storedName);
+        return storageBackend.delete(keyFor(storedName));
+    }
+    
+    /**
+     * Lower-cased extension of an original file name including the dot, or "" when it has
+     * none or it is not a plain alphanumeric extension.
+     */
+    public static String extensionOf(String originalFilename) {
+        if (originalFilename == null || !originalFilename.contains(".")) {
+            return "";
+        }
+        String extension = originalFilename.substring(originalFilename.lastIndexOf('.'));
+        return EXTENSION.matcher(extension).matches() ? extension.toLowerCase(Locale.ROOT) : "";
+    }
+    
+    public String toUrl(String storedName) {
+        return CONTENT_NAME.matcher(storedName).matches()
+            ? URL_PREFIX + shardPrefix(storedName) + storedName
+            : URL_PREFIX + storedName;
+    }
+    
+    private String contentName(byte[] content, String extension) {
+        String hash = HexFormat.of().formatHex(sha256().digest(content));
+        return extension == null ? hash : hash + extension;
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /** Two fan-out levels from the leading hash characters of a content-addressed name. */
+    private static String shardPrefix(String contentName) {
+        return contentName.substring(0, 2) + "/" + contentName.substring(2, 4) + "/";
+    }
+    
+    /**
+     * Storage key for a stored name: content-addressed names map into their fan-out
+     * directory, anything else (legacy flat files) sits at the top level.
+     * @throws IllegalArgumentException for names that could address anything else
+     */
+    private String keyFor(String storedName) {
+        if (CONTENT_NAME.matcher(storedName).matches()) {
+            return shardPrefix(storedName) + storedName;
+        }
+        if (storedName.isEmpty() || storedName.startsWith(".") || storedName.contains("/") || storedName.contains("\\")) {
+            throw new IllegalArgumentException("Invalid stored file name: " + storedName);
+        }
+        return storedName;
+    }
+    
+    private static String contentTypeOf(String storedName) {
+        return MediaTypeFactory.getMediaType(storedName).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+    
+    /**
+     * The file on local disk when the backend has one, for zero-copy serving.
+     */
+    public Optional<Path> localFile(FileMetadata metadata) {
+        return storageBackend.localFile(metadata.getStorageKey());
+    }
+    
+    /**
+     * Streams part of a stored file; the caller closes the stream.
+     */
+    public InputStream openStream(FileMetadata metadata, long offset, long length) throws IOException {
+        return storageBackend.stream(metadata.getStorageKey(), offset, length);
+    }
+    
+    /**
+     * Direct, time-limited URL from the backend, if it supports them.
+     */
+    public Optional<String> presign(FileMetadata metadata, Duration ttl) {
+        return storageBackend.presign(metadata.getStorageKey(), ttl);
+    }
+    
+    private String storedName(String fileIdOrUrl) {
+        String name = fileIdOrUrl.startsWith(URL_PREFIX) ? fileIdOrUrl.substring(URL_PREFIX.length()) : fileIdOrUrl;
+        int slash = name.lastIndexOf('/');
+        return slash >= 0 && CONTENT_NAME.matcher(name.substring(slash + 1)).matches() ? name.substring(slash + 1) : name;
+    }
+    
+    // Temp files live on the upload volume so a local put is a rename, never a copy
+    private Path tempDirectory() throws IOException {
+        Path tempDir = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        return tempDir;
+    }
+    
+    /**
+     * Adds a reference, first waiting out a reclaim of the same content.
+     * @return true if the file must be written even though it may exist: the record is new
+     *         (a reclaim may just have deleted the file) or was taken over from an expired lease
+     */
+    private boolean addReference(String name, long size, String kind) throws IOException {
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                StoredFile previous = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(name).orOperator(unleased(now))),
+                    new Update()
+                        .inc("refCount", 1)
+                        .set("lastReferencedAt", now)
+                        .unset("reclaimingUntil")
+                        .setOnInsert("path", shardPrefix(name) + name)
+                        .setOnInsert("size", size)
+                        .setOnInsert("category", kind)
+                        .setOnInsert("createdAt", now),
+                    FindAndModifyOptions.options().upsert(true).returnNew(false),
+                    StoredFile.class);
+                return previous == null || previous.getReclaimingUntil() != null;
+            } catch (DuplicateKeyException e) {
+                // The record exists under a live lease, so the upsert tried to insert it again
+                try {
+                    Thread.sleep(RECLAIM_WAIT_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a reclaim of " + name);
+                }
+            }
+        }
+    }
+    
+    private static Criteria[] unleased(LocalDateTime now) {
+        return new Criteria[] {
+            Criteria.where("reclaimingUntil").exists(false),
+            Criteria.where("reclaimingUntil").lt(now)
+        };
+    }
+    
+    /**
+     * Thrown while streaming once an upload passes its size limit; the partial file is discarded.
+     */
+    public static class FileTooLargeException extends IllegalArgumentException {
+        private final long maxBytes;
         
-        // Return the relative URL path that matches the WebConfig mapping
-        return "/uploads/" + uniqueFilename;
+        public FileTooLargeException(long maxBytes) {
+            super("File exceeds the maximum size of " + maxBytes + " bytes");
+            this.maxBytes = maxBytes;
+        }
+        
+        public long getMaxBytes() { return maxBytes; }
     }
     
     public static class FileMetadata {
         private String fileId;
         private String filename;
-        private String filePath;
+        private String filePath; // null when the backend is not local disk
+        private String storageKey;
         private String contentType;
         private long size;
+        private long lastModified; // epoch millis
+        private String etag;
         
         // Getters and setters
         public String getFileId() { return fileId; }
         public void setFileId(String fileId) { this.fileId = fileId; }
         public String getFilename() { return filename; }
         public void setFilename(String filename) { this.filename = filename; }
+        public String getStorageKey() { return storageKey; }
+        public void setStorageKey(String storageKey) { this.storageKey = storageKey; }
         public String getFilePath() { return filePath; }
         public void setFilePath(String filePath) { this.filePath = filePath; }
         public String getContentType() { return contentType; }
         public void setContentType(String contentType) { this.contentType = contentType; }
         public long getSize() { return size; }
         public void setSize(long size) { this.size = size; }
+        public long getLastModified() { return lastModified; }
+        public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+        public String getEtag() { return etag; }
+        public void setEtag(String etag) { this.etag = etag; }
+        
+        /** Strong ETags are derived from the content hash and may be used for If-Range. */
+        public boolean hasStrongEtag() { return etag != null && !etag.startsWith("W/"); }
+    }
+    
+    private void recordWrite(Timer.Sample sample, String kind, long bytes) {
+        sample.stop(Timer.builder("file.storage.write")
+            .description("Time to write an uploaded or generated file to disk")
+            .tag("kind", kind)
+            .register(meterRegistry));
+        DistributionSummary.builder("file.storage.size")
+            .description("Size of files written to storage")
+            .baseUnit("bytes")
+            .tag("kind", kind)
+            .register(meterRegistry)
+            .record(bytes);
     }
     
+    /**
+     * Metadata for a stored file, or null if it does not exist. Served from a cache so
+     * repeated downloads do not stat the file each time; misses are not cached.
+     */
     public FileMetadata getFileMetadata(String fileId) {
-        // Remove the /uploads/ prefix if present
-        String cleanFileId = fileId;
-        if (fileId.startsWith("/uploads/")) {
-            cleanFileId = fileId.substring("/uploads/".length());
-        }
+        // Accepts the URL, the sharded relative path or the bare stored name
+        String cleanFileId = storedName(fileId);
         
-        Path filePath = Paths.get(uploadDir, cleanFileId);
-        if (!Files.exists(filePath)) {
-            return null;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return metadataCache.get(cleanFileId, this::loadMetadata);
+        } finally {
+            sample.stop(meterRegistry.timer("file.storage.metadata"));
         }
-        
+    }
+    
+    private FileMetadata loadMetadata(String cleanFileId) {
         try {
+            String key = keyFor(cleanFileId);
+            Optional<StorageBackend.ObjectInfo> info = storageBackend.stat(key);
+            if (info.isEmpty()) {
+                return null;
+            }
             FileMetadata metadata = new FileMetadata();
             metadata.setFileId(cleanFileId);
-            metadata.setFilename(filePath.getFileName().toString());
-            metadata.setFilePath(filePath.toString());
-            metadata.setContentType(Files.probeContentType(filePath));
-            metadata.setSize(Files.size(filePath));
+            metadata.setFilename(cleanFileId);
+            metadata.setStorageKey(key);
+            metadata.setFilePath(storageBackend.localFile(key).map(Path::toString).orElse(null));
+            metadata.setContentType(contentTypeOf(cleanFileId));
+            metadata.setSize(info.get().getSize());
+            metadata.setLastModified(info.get().getLastModified());
+            if (CONTENT_NAME.matcher(cleanFileId).matches()) {
+                metadata.setEtag("\"" + cleanFileId.substring(0, 64) + "\"");
+            } else {
+                // Legacy flat files have no hash on record; hashing them per request would defeat the point
+                metadata.setEtag("W/\"" + Long.toHexString(metadata.getSize()) + "-"
+                    + Long.toHexString(metadata.getLastModified()) + "\"");
+            }
             return metadata;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected file id {}: {}", cleanFileId, e.getMessage());
+            return null;
         } catch (IOException e) {
             logger.error("Error getting file metadata: {}", e.getMessage(), e);
             return null;
         }
     }
 }
-
@@ -0,0 +1,231 @@
+package com.invoiceapp.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.invoiceapp.dto.ApiResponse;
+import com.invoiceapp.entity.IdempotencyRecord;
+import com.invoiceapp.repository.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Replays the first response for a repeated Idempotency-Key instead of running the action again.
+ * Completed records live in Mongo (TTL-indexed) and in a bounded in-memory near cache.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration lockTimeout;
+    private final Cache<String, IdempotencyRecord> nearCache;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              MongoTemplate mongoTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${idempotency.lock-timeout-seconds:60}") long lockTimeoutSeconds,
+                              @Value("${idempotency.near-cache.max-size:10000}") long nearCacheMaxSize) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lockTimeout = Duration.ofSeconds(lockTimeoutSeconds);
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheMaxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Runs the action once per (caller, scope, key). Keys are per caller, so one account can
+     * neither collide with nor replay another account's stored responses.
+     * Without a key the action simply runs.
+     * Only 2xx responses are recorded, so failed attempts can be retried with the same key.
+     */
+    public <T> ResponseEntity<ApiResponse<T>> execute(String scope, String key, Object requestPayload,
+                                                      Class<T> dataType,
+                                                      Supplier<ResponseEntity<ApiResponse<T>>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error("Invalid Idempotency-Key",
+                            "Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters"));
+        }
+
+        String caller = InvoiceService.currentUserId();
+        String recordId = (caller != null ? caller : "-") + ":" + scope + ":" + key.trim();
+        String requestHash = fingerprint(requestPayload);
+
+        Optional<ResponseEntity<ApiResponse<T>>> existing = resolveExisting(recordId, requestHash, dataType);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord claim = new IdempotencyRecord(recordId, requestHash, now, now.plus(ttl));
+        try {
+            idempotencyRecordRepository.insert(claim);
+        } catch (DuplicateKeyException e) {
+            // Another request with the same key won the race
+            return resolveExisting(recordId, requestHash, dataType)
+                    .orElseGet(() -> inProgressResponse());
+        }
+
+        ResponseEntity<ApiResponse<T>> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(claim);
+            throw e;
+        }
+
+        if (response.getStatusCode().is2xxSuccessful()) {
+            try {
+                complete(claim, response);
+            } catch (Exception e) {
+                logger.error("Failed to record idempotent response for key {}: {}", recordId, e.getMessage(), e);
+                release(claim);
+            }
+        } else {
+            release(claim);
+        }
+        return response;
+    }
+
+    /**
+     * Stores the response on the claim, unless the claim was released as stale in the meantime
+     * (the action outlived the lock timeout) and the key now belongs to a newer request.
+     */
+    private <T> void complete(IdempotencyRecord claim, ResponseEntity<ApiResponse<T>> response) throws Exception {
+        claim.setStatus(IdempotencyRecord.STATUS_COMPLETED);
+        claim.setResponseStatus(response.getStatusCode().value());
+        claim.setResponseBody(objectMapper.writeValueAsString(response.getBody()));
+        Update update = new Update()
+                .set("status", claim.getStatus())
+                .set("responseStatus", claim.getResponseStatus())
+                .set("responseBody", claim.getResponseBody());
+        if (mongoTemplate.updateFirst(ownClaim(claim), update, IdempotencyRecord.class).getMatchedCount() == 0) {
+            logger.warn("Idempotency claim {} was taken over before its response was recorded", claim.getId());
+            return;
+        }
+        nearCache.put(claim.getId(), claim);
+    }
+
+    /**
+     * Removes the claim this request holds; a newer claim on the same key is left alone.
+     */
+    private void release(IdempotencyRecord claim) {
+        mongoTemplate.remove(ownClaim(claim), IdempotencyRecord.class);
+    }
+
+    private static Query ownClaim(IdempotencyRecord claim) {
+        // A missing token (claims stored before tokens existed) matches null
+        return Query.query(Criteria.where("_id").is(claim.getId())
+                .and("claimToken").is(claim.getClaimToken())
+                .and("status").is(IdempotencyRecord.STATUS_IN_PROGRESS));
+    }
+
+    private <T> Optional<ResponseEntity<ApiResponse<T>>> resolveExisting(String recordId, String requestHash,
+                                                                         Class<T> dataType) {
+        IdempotencyRecord record = nearCache.getIfPresent(recordId);
+        if (record == null) {
+            record = idempotencyRecordRepository.findById(recordId).orElse(null);
+            if (record == null) {
+                return Optional.empty();
+            }
+            if (record.isCompleted()) {
+                nearCache.put(recordId, record);
+            }
+        }
+
+        if (!record.getRequestHash().equals(requestHash)) {
+            return Optional.of(ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(ApiResponse.error("Idempotency-Key reuse",
+                            "Idempotency-Key was already used with a different request payload")));
+        }
+
+        if (record.isCompleted()) {
+            return Optional.of(replay(record, dataType));
+        }
+
+        // A claim left behind by a crashed request is released once the lock timeout passes
+        if (record.getCreatedAt() != null
+                && record.getCreatedAt().plus(lockTimeout).isBefore(LocalDateTime.now())) {
+            logger.warn("Releasing stale idempotency claim {}", recordId);
+            // Only the claim seen here: if another request already replaced it, the insert that
+            // follows loses the race and resolves against the newer claim instead
+            release(record);
+            return Optional.empty();
+        }
+        return Optional.of(inProgressResponse());
+    }
+
+    private <T> ResponseEntity<ApiResponse<T>> replay(IdempotencyRecord record, Class<T> dataType) {
+        try {
+            JavaType type = objectMapper.getTypeFactory().constructParametricType(ApiResponse.class, dataType);
+            ApiResponse<T> body = objectMapper.readValue(record.getResponseBody(), type);
+            return ResponseEntity.status(record.getResponseStatus())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Stored idempotent response could not be read", e);
+        }
+    }
+
+    private <T> ResponseEntity<ApiResponse<T>> inProgressResponse() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("Request in progress",
+                        "A request with this Idempotency-Key is still being processed"));
+    }
+
+    private String fingerprint(Object payload) {
+        try {
+            byte[] bytes;
+            if (payload == null) {
+                bytes = new byte[0];
+            } else if (payload instanceof byte[] raw) {
+                bytes = raw;
+            } else if (payload instanceof String text) {
+                bytes = text.getBytes(StandardCharsets.UTF_8);
+            } else {
+                bytes = objectMapper.writeValueAsBytes(payload);
+            }
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Request payload could not be fingerprinted: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.invoiceapp.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Image helpers shared by logo processing and PDF rendering.
+ */
+final class ImageRenditions {
+
+    static final Set<String> ACCEPTED_FORMATS = Set.of("png", "jpeg", "gif", "bmp");
+
+    private ImageRenditions() {}
+
+    /**
+     * Checks format and dimensions from the image header only, so oversized or
+     * non-image uploads are rejected without decoding the pixels.
+     * @return the detected format name (lower case)
+     * @throws IllegalArgumentException if the content is not an accepted image
+     */
+    static String validate(byte[] content, long maxBytes, int maxDimension) {
+        if (content == null || content.length == 0) {
+            throw new IllegalArgumentException("Image is empty");
+        }
+        if (content.length > maxBytes) {
+            throw new IllegalArgumentException("Image exceeds the maximum size of " + (maxBytes / 1024) + " KB");
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                if (format.equals("jpg")) {
+                    format = "jpeg";
+                }
+                if (!ACCEPTED_FORMATS.contains(format)) {
+                    throw new IllegalArgumentException("Unsupported image format: " + format);
+                }
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width > maxDimension || height > maxDimension) {
+                    throw new IllegalArgumentException("Image dimensions " + width + "x" + height
+                            + " exceed the maximum of " + maxDimension + "px");
+                }
+                return format;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Image could not be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fits the image into a maxWidth x maxHeight box, keeping the aspect ratio and never upscaling.
+     * Transparent areas become white so the result can be stored as JPEG.
+     */
+    static BufferedImage fit(BufferedImage source, int maxWidth, int maxHeight) {
+        double ratio = Math.min(1.0, Math.min((double) maxWidth / source.getWidth(), (double) maxHeight / source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    static byte[] toJpeg(BufferedImage image, float quality) throws IOException {
+        byte[] encoded = write(image, "jpg", quality);
+        if (encoded == null) {
+            throw new IOException("No JPEG writer available");
+        }
+        return encoded;
+    }
+
+    /**
+     * The JDK has no WebP encoder; this returns null unless an ImageIO WebP plugin is on the classpath.
+     */
+    static byte[] toWebp(BufferedImage image, float quality) throws IOException {
+        return write(image, "webp", quality);
+    }
+
+    private static byte[] write(BufferedImage image, String format, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return null;
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (param.getCompressionType() == null && param.getCompressionTypes() != null
+                    && param.getCompressionTypes().length > 0) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+            param.setCompressionQuality(quality);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,226 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceEvent;
+import com.invoiceapp.entity.ChangeStreamCheckpoint;
+import com.invoiceapp.entity.Invoice;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Turns the change stream of the invoices collection into InvoiceEvents.
+ * The resume token of the last handled change is saved every checkpoint-interval and on
+ * shutdown; after a restart or a stream error the stream continues after it, so no change
+ * is skipped. If the token is no longer in the oplog the stream starts over from now and
+ * the gap is logged. Change streams need a replica set, hence the opt-in property.
+ */
+@Component
+@ConditionalOnProperty(name = "invoice.events.change-stream.enabled", havingValue = "true")
+public class InvoiceChangeStreamListener implements MessageListener<ChangeStreamDocument<Document>, Invoice> {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceChangeStreamListener.class);
+
+    private static final String COLLECTION = "invoices";
+    // InvalidResumeToken, ChangeStreamFatalError, ChangeStreamHistoryLost
+    private static final Set<Integer> RESUME_TOKEN_LOST = Set.of(260, 280, 286);
+
+    private final MongoTemplate mongoTemplate;
+    private final InvoiceEventPublisher eventPublisher;
+    private final TaskScheduler taskScheduler;
+    private final String checkpointId;
+    private final Duration checkpointInterval;
+    private final Duration retryDelay;
+    private final boolean preImages;
+
+    private MessageListenerContainer container;
+    private Subscription subscription;
+    private boolean checkpointLoaded;
+    // Token of the last change handled, and whether it still has to be saved
+    private volatile BsonDocument lastToken;
+    private volatile boolean tokenDirty;
+
+    public InvoiceChangeStreamListener(MongoTemplate mongoTemplate,
+                                       InvoiceEventPublisher eventPublisher,
+                                       TaskScheduler taskScheduler,
+                                       @Value("${invoice.events.checkpoint-id:invoices}") String checkpointId,
+                                       @Value("${invoice.events.checkpoint-interval-ms:1000}") long checkpointIntervalMs,
+                                       @Value("${invoice.events.retry-delay-ms:30000}") long retryDelayMs,
+                                       @Value("${invoice.events.change-stream.pre-images:false}") boolean preImages) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.taskScheduler = taskScheduler;
+        this.checkpointId = checkpointId;
+        this.checkpointInterval = Duration.ofMillis(checkpointIntervalMs);
+        this.retryDelay = Duration.ofMillis(retryDelayMs);
+        this.preImages = preImages;
+    }
+
+    /**
+     * Registers the invoices stream with the container, resuming after the saved checkpoint.
+     * Runs on the scheduler so an unreachable database delays the feed instead of startup.
+     */
+    public synchronized void subscribe(MessageListenerContainer container) {
+        this.container = container;
+        taskScheduler.schedule(this::resubscribe, Instant.now());
+        taskScheduler.scheduleWithFixedDelay(this::saveCheckpoint, checkpointInterval);
+    }
+
+    @Override
+    public void onMessage(Message<ChangeStreamDocument<Document>, Invoice> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        if (change == null) {
+            return;
+        }
+        // Exceptions thrown here would reach the error handler, which restarts the stream
+        try {
+            switch (change.getOperationType()) {
+                case INSERT -> eventPublisher.publish(InvoiceEvent.Type.CREATED, invoiceId(change), message.getBody());
+                // The looked-up document is null if the invoice was deleted in the meantime
+                case UPDATE, REPLACE -> eventPublisher.publish(InvoiceEvent.Type.UPDATED, invoiceId(change), message.getBody());
+                case DELETE -> eventPublisher.publish(InvoiceEvent.Type.DELETED, invoiceId(change), null, deletedTenant(change));
+                case DROP, RENAME -> logger.warn("Invoices collection {}, change stream will be invalidated",
+                        change.getOperationType());
+                case INVALIDATE -> {
+                    // The cursor closes after an invalidate; start a new one after it
+                    logger.warn("Invoice change stream invalidated, restarting in {}s", retryDelay.toSeconds());
+                    taskScheduler.schedule(this::resubscribe, Instant.now().plus(retryDelay));
+                }
+                default -> { }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not publish invoice change {}: {}", change.getOperationType(), e.getMessage(), e);
+        }
+        lastToken = change.getResumeToken();
+        tokenDirty = true;
+    }
+
+    private void onError(Throwable error) {
+        if (isResumeTokenLost(error)) {
+            logger.error("Invoice change stream cannot resume from its checkpoint, restarting from now; "
+                    + "changes since the last checkpoint were not published: {}", error.getMessage());
+            lastToken = null;
+            tokenDirty = false;
+            try {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(checkpointId)), ChangeStreamCheckpoint.class);
+            } catch (RuntimeException e) {
+                logger.warn("Could not clear invoice change stream checkpoint: {}", e.getMessage());
+            }
+        } else {
+            logger.warn("Invoice change stream failed, retrying in {}s: {}", retryDelay.toSeconds(), error.getMessage());
+        }
+        taskScheduler.schedule(this::resubscribe, Instant.now().plus(retryDelay));
+    }
+
+    private synchronized void resubscribe() {
+        if (!checkpointLoaded) {
+            try {
+                lastToken = loadCheckpoint();
+                checkpointLoaded = true;
+            } catch (RuntimeException e) {
+                logger.warn("Could not read invoice change stream checkpoint, retrying in {}s: {}",
+                        retryDelay.toSeconds(), e.getMessage());
+                taskScheduler.schedule(this::resubscribe, Instant.now().plus(retryDelay));
+                return;
+            }
+        }
+        if (subscription != null) {
+            container.remove(subscription);
+        }
+        register();
+    }
+
+    private void register() {
+        ChangeStreamRequest.ChangeStreamRequestBuilder<Invoice> request = ChangeStreamRequest.builder(this)
+                .collection(COLLECTION)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (preImages) {
+            // Needs MongoDB 6.0+ and changeStreamPreAndPostImages enabled on the collection
+            request.fullDocumentBeforeChangeLookup(FullDocumentBeforeChange.WHEN_AVAILABLE);
+        }
+        BsonDocument token = lastToken;
+        if (token != null) {
+            // startAfter (unlike resumeAfter) also accepts the token of an invalidate event
+            request.startAfter(token);
+        }
+        subscription = container.register(request.build(), Invoice.class, this::onError);
+    }
+
+    private BsonDocument loadCheckpoint() {
+        ChangeStreamCheckpoint checkpoint = mongoTemplate.findById(checkpointId, ChangeStreamCheckpoint.class);
+        if (checkpoint == null || checkpoint.getResumeToken() == null) {
+            logger.info("No invoice change stream checkpoint, starting from now");
+            return null;
+        }
+        logger.info("Resuming invoice change stream from checkpoint saved at {}", checkpoint.getUpdatedAt());
+        return BsonDocument.parse(checkpoint.getResumeToken());
+    }
+
+    @PreDestroy
+    public void saveCheckpoint() {
+        BsonDocument token = lastToken;
+        if (!tokenDirty || token == null) {
+            return;
+        }
+        tokenDirty = false;
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(checkpointId)),
+                    new Update().set("resumeToken", token.toJson()).set("updatedAt", LocalDateTime.now()),
+                    ChangeStreamCheckpoint.class);
+        } catch (RuntimeException e) {
+            tokenDirty = true;
+            logger.warn("Could not save invoice change stream checkpoint: {}", e.getMessage());
+        }
+    }
+
+    private static String invoiceId(ChangeStreamDocument<Document> change) {
+        BsonValue id = change.getDocumentKey() != null ? change.getDocumentKey().get("_id") : null;
+        if (id == null) {
+            return null;
+        }
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString()
+                : id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    /**
+     * Tenant of a deleted invoice, known only from a pre-image. Without one the event has no
+     * tenant and reaches every stream (it carries nothing but the id).
+     */
+    private static String deletedTenant(ChangeStreamDocument<Document> change) {
+        Document before = change.getFullDocumentBeforeChange();
+        return before != null ? before.getString("tenantId") : null;
+    }
+
+    private static boolean isResumeTokenLost(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongoError && RESUME_TOKEN_LOST.contains(mongoError.getCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceEvent;
+import com.invoiceapp.entity.Invoice;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-process fan-out of invoice created/updated/deleted events.
+ * With invoice.events.change-stream.enabled the events come from InvoiceChangeStreamListener
+ * and cover writes made by every node. Without it (no replica set) InvoiceService publishes
+ * its own writes after they succeed, so subscribers only see changes made through this node.
+ * Subscribers are called on the publishing thread and must hand off anything slow.
+ */
+@Service
+public class InvoiceEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceEventPublisher.class);
+
+    private final List<Consumer<InvoiceEvent>> subscribers = new CopyOnWriteArrayList<>();
+    // Seeded from the clock so event ids keep increasing across restarts
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final MeterRegistry meterRegistry;
+    private final boolean changeStreamEnabled;
+
+    public InvoiceEventPublisher(MeterRegistry meterRegistry,
+                                 @Value("${invoice.events.change-stream.enabled:false}") boolean changeStreamEnabled) {
+        this.meterRegistry = meterRegistry;
+        this.changeStreamEnabled = changeStreamEnabled;
+    }
+
+    /**
+     * @return action that removes the subscriber again
+     */
+    public Runnable subscribe(Consumer<InvoiceEvent> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    public void publish(InvoiceEvent.Type type, String invoiceId, Invoice invoice) {
+        publish(type, invoiceId, invoice, invoice != null ? invoice.getTenantId() : null);
+    }
+
+    /**
+     * @param tenantId tenant of the invoice, for events that carry only its id
+     */
+    public void publish(InvoiceEvent.Type type, String invoiceId, Invoice invoice, String tenantId) {
+        InvoiceEvent event = new InvoiceEvent(sequence.incrementAndGet(), type, invoiceId,
+                invoice != null ? InvoiceService.toDTO(invoice) : null,
+                tenantId,
+                Instant.now().toString());
+        meterRegistry.counter("invoice.events", "type", type.name().toLowerCase(Locale.ROOT)).increment();
+        for (Consumer<InvoiceEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                // One failing subscriber must not keep the event from the others
+                logger.warn("Invoice event subscriber failed on {} {}: {}", type, invoiceId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes a write made by InvoiceService, unless the change stream will report it.
+     */
+    void publishLocal(InvoiceEvent.Type type, String invoiceId, Invoice invoice, String tenantId) {
+        if (!changeStreamEnabled) {
+            publish(type, invoiceId, invoice, tenantId);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.invoiceapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceapp.dto.InvoiceEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Server-Sent Events view of InvoiceEventPublisher, behind the per-user invoice stream and
+ * the internal feed. Events go out as "created" / "updated" / "deleted" messages with the
+ * event id as SSE id.
+ *
+ * An open stream holds no thread: the request is async and the NIO connector parks the idle
+ * socket, so a stream costs its emitter and an empty queue. Each stream has its own bounded
+ * queue, drained by at most one task at a time on invoiceEventExecutor, which keeps its
+ * events in order; a client that falls max-pending behind is disconnected and catches up
+ * on reconnect. Recent events are kept for Last-Event-ID replay; a client whose last id is
+ * no longer known gets a "reset" event and should refetch the list.
+ * A comment line every heartbeat interval keeps proxies from closing idle streams and
+ * reveals clients that went away.
+ */
+@Service
+public class InvoiceEventStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceEventStreamService.class);
+
+    public static final String RESET_EVENT = "reset";
+
+    private static final Set<ResponseBodyEmitter.DataWithMediaType> HEARTBEAT = SseEmitter.event().comment("").build();
+
+    private final Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+    // Most recent events for replay, oldest first; guarded by itself
+    private final Deque<InvoiceEvent> recent = new ArrayDeque<>();
+    private long latestEventId = -1;
+
+    private final InvoiceEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor executor;
+    private final TaskScheduler taskScheduler;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final long timeoutMillis;
+    private final Duration heartbeatInterval;
+    private final int maxPending;
+    private final int replaySize;
+
+    public InvoiceEventStreamService(InvoiceEventPublisher eventPublisher,
+                                     @Qualifier("invoiceEventExecutor") ThreadPoolTaskExecutor executor,
+                                     TaskScheduler taskScheduler,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${invoice.events.sse.timeout-ms:1800000}") long timeoutMillis,
+                                     @Value("${invoice.events.sse.heartbeat-seconds:15}") long heartbeatSeconds,
+                                     @Value("${invoice.events.sse.max-pending:100}") int maxPending,
+                                     @Value("${invoice.events.replay-size:1000}") int replaySize) {
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.taskScheduler = taskScheduler;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatInterval = Duration.ofSeconds(heartbeatSeconds);
+        this.maxPending = maxPending;
+        this.replaySize = replaySize;
+    }
+
+    @PostConstruct
+    void start() {
+        meterRegistry.gaugeCollectionSize("invoice.events.streams", Tags.empty(), streams);
+        eventPublisher.subscribe(this::dispatch);
+        taskScheduler.scheduleAtFixedRate(this::heartbeat, heartbeatInterval);
+    }
+
+    /**
+     * Opens a stream; it ends after the timeout (clients reconnect on their own) or when
+     * a send fails.
+     * @param lastEventId Last-Event-ID sent by a reconnecting client, or null
+     */
+    public SseEmitter open(Predicate<InvoiceEvent> filter, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        EventStream stream = new EventStream(emitter, filter);
+        emitter.onCompletion(() -> streams.remove(stream));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> streams.remove(stream));
+
+        // Same lock as dispatch(), so no event falls between the replay and the live stream
+        synchronized (recent) {
+            if (lastEventId != null) {
+                List<InvoiceEvent> missed = eventsAfter(lastEventId);
+                List<InvoiceEvent> replay = missed == null ? null
+                        : missed.stream().filter(filter).toList();
+                // A replay longer than the pending limit would be cut short (offer closes nothing
+                // for a stream not yet registered), so the client reloads instead
+                if (replay == null || replay.size() > maxPending) {
+                    stream.offer(SseEmitter.event().name(RESET_EVENT).data("{}").build());
+                } else {
+                    for (InvoiceEvent event : replay) {
+                        stream.offer(toMessage(event));
+                    }
+                }
+            }
+            streams.add(stream);
+        }
+        drain(stream);
+        return emitter;
+    }
+
+    private void dispatch(InvoiceEvent event) {
+        Set<ResponseBodyEmitter.DataWithMediaType> message = toMessage(event);
+        List<EventStream> targets = new ArrayList<>();
+        synchronized (recent) {
+            recent.addLast(event);
+            if (recent.size() > replaySize) {
+                recent.removeFirst();
+            }
+            latestEventId = event.getId();
+            for (EventStream stream : streams) {
+                if (stream.filter.test(event)) {
+                    stream.offer(message);
+                    targets.add(stream);
+                }
+            }
+        }
+        targets.forEach(this::drain);
+    }
+
+    private void heartbeat() {
+        for (EventStream stream : streams) {
+            stream.offer(HEARTBEAT);
+            drain(stream);
+        }
+    }
+
+    /**
+     * @return events after the given id, or null if that id is not (or no longer) known here
+     */
+    private List<InvoiceEvent> eventsAfter(String lastEventId) {
+        long after;
+        try {
+            after = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (after == latestEventId) {
+            return List.of();
+        }
+        List<InvoiceEvent> missed = new ArrayList<>();
+        boolean found = false;
+        for (InvoiceEvent event : recent) {
+            if (found) {
+                missed.add(event);
+            } else if (event.getId() == after) {
+                found = true;
+            }
+        }
+        return found ? missed : null;
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> toMessage(InvoiceEvent event) {
+        // Serialized once here rather than once per stream
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize invoice event " + event.getId(), e);
+        }
+        return SseEmitter.event()
+                .id(Long.toString(event.getId()))
+                .name(event.getType().name().toLowerCase(Locale.ROOT))
+                .data(json)
+                .build();
+    }
+
+    private void drain(EventStream stream) {
+        if (stream.queue.isEmpty() || !stream.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> send(stream));
+        } catch (TaskRejectedException e) {
+            stream.draining.set(false);
+            close(stream, "sender-rejected");
+        }
+    }
+
+    private void send(EventStream stream) {
+        try {
+            Set<ResponseBodyEmitter.DataWithMediaType> message;
+            while ((message = stream.queue.poll()) != null) {
+                stream.pending.decrementAndGet();
+                stream.emitter.send(message);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the stream already completed
+            streams.remove(stream);
+            stream.emitter.completeWithError(e);
+            return;
+        } finally {
+            stream.draining.set(false);
+        }
+        // Pick up anything offered after the queue looked empty
+        drain(stream);
+    }
+
+    private void close(EventStream stream, String reason) {
+        if (streams.remove(stream)) {
+            meterRegistry.counter("invoice.events.dropped", "reason", reason).increment();
+            logger.debug("Closing invoice event stream: {}", reason);
+            stream.emitter.complete();
+        }
+    }
+
+    private final class EventStream {
+        private final SseEmitter emitter;
+        private final Predicate<InvoiceEvent> filter;
+        private final Queue<Set<ResponseBodyEmitter.DataWithMediaType>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private EventStream(SseEmitter emitter, Predicate<InvoiceEvent> filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+
+        private void offer(Set<ResponseBodyEmitter.DataWithMediaType> message) {
+            if (pending.incrementAndGet() > maxPending) {
+                // Too far behind; it resumes from its Last-Event-ID after reconnecting
+                pending.decrementAndGet();
+                close(this, "slow-client");
+                return;
+            }
+            queue.offer(message);
+        }
+    }
+}
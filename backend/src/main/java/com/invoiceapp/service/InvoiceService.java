@@ -1,81 +1,389 @@
 package com.invoiceapp.service;
 
 import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.dto.InvoiceEvent;
+import com.invoiceapp.dto.InvoicePatchRequest;
+import com.invoiceapp.dto.ServiceLinePage;
 import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.ServiceItem;
+import com.invoiceapp.entity.User;
 import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.observation.annotation.Observed;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 public class InvoiceService {
     
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceService.class);
+    
+    private static final String INVOICE_OPERATION_METRIC = "invoice.operation";
+    
     @Autowired
     private InvoiceRepository invoiceRepository;
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private InvoiceEventPublisher invoiceEventPublisher;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    // Owner for invoices written before tenants and creators were recorded
+    @Value("${invoice.tenant.legacy-tenant-id:}")
+    private String legacyTenantId;
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "create"}, histogram = true)
     public InvoiceDTO createInvoice(InvoiceDTO invoiceDTO) {
-        System.out.println("Creating new invoice: " + invoiceDTO.getInvoiceNumber());
+        logger.debug("Creating new invoice: {}", invoiceDTO.getInvoiceNumber());
         
         Invoice invoice = convertToEntity(invoiceDTO);
         // Let MongoDB generate the ID for new invoices
         invoice.setId(null);
         invoice.setCreatedAt(LocalDateTime.now());
         invoice.setUpdatedAt(LocalDateTime.now());
+        invoice.setTenantId(currentTenantId());
+        invoice.setCreatedBy(currentUserId());
         
         Invoice savedInvoice = invoiceRepository.save(invoice);
-        System.out.println("Invoice saved with ID: " + savedInvoice.getId());
-        return convertToDTO(savedInvoice);
+        logger.info("Invoice saved with ID: {}", savedInvoice.getId());
+        invoiceEventPublisher.publishLocal(InvoiceEvent.Type.CREATED, savedInvoice.getId(), savedInvoice,
+            savedInvoice.getTenantId());
+        return toDTO(savedInvoice);
     }
     
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "update"}, histogram = true)
     public InvoiceDTO updateInvoice(String id, InvoiceDTO invoiceDTO) {
-        System.out.println("Updating invoice: " + id);
+        logger.debug("Updating invoice: {}", id);
         
-        Invoice invoice = invoiceRepository.findById(id)
-            .orElseThrow(() -> new RuntimeException("Invoice not found with id: " + id));
+        // Single atomic $set instead of findById + save
+        Update update = new Update()
+            .set("invoiceNumber", invoiceDTO.getInvoiceNumber())
+            .set("date", invoiceDTO.getDate())
+            .set("employeeName", invoiceDTO.getEmployeeName())
+            .set("employeeId", invoiceDTO.getEmployeeId())
+            .set("employeeEmail", invoiceDTO.getEmployeeEmail())
+            .set("employeeAddress", invoiceDTO.getEmployeeAddress())
+            .set("employeeMobile", invoiceDTO.getEmployeeMobile())
+            .set("services", invoiceDTO.getServices())
+            .set("taxRate", invoiceDTO.getTaxRate());
         
-        invoice.setInvoiceNumber(invoiceDTO.getInvoiceNumber());
-        invoice.setDate(invoiceDTO.getDate());
-        invoice.setEmployeeName(invoiceDTO.getEmployeeName());
-        invoice.setEmployeeId(invoiceDTO.getEmployeeId());
-        invoice.setEmployeeEmail(invoiceDTO.getEmployeeEmail());
-        invoice.setEmployeeAddress(invoiceDTO.getEmployeeAddress());
-        invoice.setEmployeeMobile(invoiceDTO.getEmployeeMobile());
-        invoice.setServices(invoiceDTO.getServices());
-        invoice.setTaxRate(invoiceDTO.getTaxRate());
-        invoice.setUpdatedAt(LocalDateTime.now());
+        return toDTO(applyUpdate(id, invoiceDTO.getVersion(), update));
+    }
+    
+    /**
+     * Applies only the fields present in the patch as one $set/$push/$pull update.
+     * @throws OptimisticLockingFailureException if patch.version no longer matches
+     */
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "patch"}, histogram = true)
+    public InvoiceDTO patchInvoice(String id, InvoicePatchRequest patch) {
+        logger.debug("Patching invoice: {}", id);
         
-        Invoice updatedInvoice = invoiceRepository.save(invoice);
-        return convertToDTO(updatedInvoice);
+        Update update = new Update();
+        setIfPresent(update, "invoiceNumber", patch.getInvoiceNumber());
+        setIfPresent(update, "date", patch.getDate());
+        setIfPresent(update, "employeeName", patch.getEmployeeName());
+        setIfPresent(update, "employeeId", patch.getEmployeeId());
+        setIfPresent(update, "employeeEmail", patch.getEmployeeEmail());
+        setIfPresent(update, "employeeAddress", patch.getEmployeeAddress());
+        setIfPresent(update, "employeeMobile", patch.getEmployeeMobile());
+        if (patch.getTaxRate() != null) {
+            if (patch.getTaxRate() < 0) {
+                throw new IllegalArgumentException("Tax rate cannot be negative");
+            }
+            update.set("taxRate", patch.getTaxRate());
+        }
+        
+        boolean adding = patch.getAddServices() != null && !patch.getAddServices().isEmpty();
+        boolean removing = patch.getRemoveServiceIds() != null && !patch.getRemoveServiceIds().isEmpty();
+        if (adding && removing) {
+            // MongoDB rejects $push and $pull on the same path in one update
+            throw new IllegalArgumentException("addServices and removeServiceIds cannot be combined in one request");
+        }
+        if (adding) {
+            for (ServiceItem item : patch.getAddServices()) {
+                if (item.getId() == null || item.getId().isBlank()) {
+                    item.setId(UUID.randomUUID().toString());
+                }
+            }
+            update.push("services").each(patch.getAddServices().toArray());
+        }
+        if (removing) {
+            update.pull("services", Query.query(Criteria.where("id").in(patch.getRemoveServiceIds())).getQueryObject());
+        }
+        
+        if (update.getUpdateObject().isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        
+        return toDTO(applyUpdate(id, patch.getVersion(), update));
     }
     
+    private void setIfPresent(Update update, String field, String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.trim().isEmpty()) {
+            throw new IllegalArgumentException(field + " cannot be blank");
+        }
+        update.set(field, value);
+    }
+    
+    private Invoice applyUpdate(String id, Long expectedVersion, Update update) {
+        String tenantId = currentTenantId();
+        Query query = Query.query(byId(tenantId, id));
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where("version").is(expectedVersion));
+        }
+        update.set("updatedAt", LocalDateTime.now()).inc("version", 1);
+        
+        Invoice updated = mongoTemplate.findAndModify(query, update,
+            FindAndModifyOptions.options().returnNew(true), Invoice.class);
+        if (updated == null) {
+            if (expectedVersion != null && invoiceRepository.existsByTenantIdAndId(tenantId, id)) {
+                throw new OptimisticLockingFailureException(
+                    "Invoice " + id + " was modified concurrently (expected version " + expectedVersion + ")");
+            }
+            throw new RuntimeException("Invoice not found with id: " + id);
+        }
+        invoiceEventPublisher.publishLocal(InvoiceEvent.Type.UPDATED, id, updated, tenantId);
+        return updated;
+    }
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "delete"}, histogram = true)
     public void deleteInvoice(String id) {
-        System.out.println("Deleting invoice: " + id);
-        invoiceRepository.deleteById(id);
+        logger.info("Deleting invoice: {}", id);
+        String tenantId = currentTenantId();
+        if (mongoTemplate.remove(Query.query(byId(tenantId, id)), Invoice.class).getDeletedCount() > 0) {
+            invoiceEventPublisher.publishLocal(InvoiceEvent.Type.DELETED, id, null, tenantId);
+        }
     }
     
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "get"}, histogram = true)
+    @Observed(name = "invoice.load", contextualName = "invoice-load")
     public InvoiceDTO getInvoiceById(String id) {
-        System.out.println("Fetching invoice: " + id);
-        Invoice invoice = invoiceRepository.findById(id)
+        logger.debug("Fetching invoice: {}", id);
+        Invoice invoice = invoiceRepository.findByTenantIdAndId(currentTenantId(), id)
             .orElseThrow(() -> new RuntimeException("Invoice not found with id: " + id));
-        return convertToDTO(invoice);
+        return toDTO(invoice);
     }
     
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "list"}, histogram = true)
     public List<InvoiceDTO> getAllInvoices() {
-        System.out.println("Fetching all invoices");
-        return invoiceRepository.findAllByOrderByCreatedAtDesc()
+        logger.debug("Fetching all invoices");
+        return invoiceRepository.findByTenantIdOrderByCreatedAtDesc(currentTenantId())
             .stream()
-            .map(this::convertToDTO)
+            .map(InvoiceService::toDTO)
             .collect(Collectors.toList());
     }
     
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "list-by-employee"}, histogram = true)
     public List<InvoiceDTO> getInvoicesByEmployeeId(String employeeId) {
-        System.out.println("Fetching invoices for employee: " + employeeId);
-        return invoiceRepository.findByEmployeeIdOrderByCreatedAtDesc(employeeId)
+        logger.debug("Fetching invoices for employee: {}", employeeId);
+        return invoiceRepository.findByTenantIdAndEmployeeIdOrderByCreatedAtDesc(currentTenantId(), employeeId)
             .stream()
-            .map(this::convertToDTO)
+            .map(InvoiceService::toDTO)
+            .collect(Collectors.toList());
+    }
+    
+    // ---- Service-line operations: touch one array element instead of the whole list ----
+    
+    private static final int MAX_SERVICE_LINE_PAGE_SIZE = 500;
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "line-page"}, histogram = true)
+    public ServiceLinePage getServiceLines(String invoiceId, int page, int size) {
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        if (size < 1 || size > MAX_SERVICE_LINE_PAGE_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_SERVICE_LINE_PAGE_SIZE);
+        }
+        
+        // $slice on the server so only the requested page leaves MongoDB. The skip is capped
+        // instead of overflowing (a negative skip counts from the end); no array is that long,
+        // so a page past it is simply empty
+        int skip = (int) Math.min((long) page * size, Integer.MAX_VALUE);
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(byId(currentTenantId(), invoiceId)),
+            Aggregation.project()
+                .and("services").slice(size, skip).as("items")
+                .and(ArrayOperators.Size.lengthOfArray(
+                    ConditionalOperators.ifNull("services").then(Collections.emptyList()))).as("totalItems"));
+        Document result = mongoTemplate.aggregate(aggregation, Invoice.class, Document.class).getUniqueMappedResult();
+        if (result == null) {
+            throw new RuntimeException("Invoice not found with id: " + invoiceId);
+        }
+        
+        List<ServiceItem> items = result.getList("items", Document.class, Collections.emptyList()).stream()
+            .map(doc -> mongoTemplate.getConverter().read(ServiceItem.class, doc))
             .collect(Collectors.toList());
+        return new ServiceLinePage(items, page, size, result.getInteger("totalItems", 0));
+    }
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "line-add"}, histogram = true)
+    public ServiceItem addServiceLine(String invoiceId, ServiceItem item) {
+        validateServiceLine(item);
+        if (item.getId() == null || item.getId().isBlank()) {
+            item.setId(UUID.randomUUID().toString());
+        }
+        
+        Update update = new Update().push("services", item);
+        String tenantId = currentTenantId();
+        if (applyLineUpdate(tenantId, invoiceId, Query.query(byId(tenantId, invoiceId)), update) == 0) {
+            throw new RuntimeException("Invoice not found with id: " + invoiceId);
+        }
+        return item;
+    }
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "line-update"}, histogram = true)
+    public ServiceItem updateServiceLine(String invoiceId, String lineId, ServiceItem changes) {
+        Update update = new Update();
+        if (changes.getDescription() != null) {
+            update.set("services.$.description", changes.getDescription());
+        }
+        if (changes.getHours() != null) {
+            update.set("services.$.hours", changes.getHours());
+        }
+        if (changes.getRate() != null) {
+            update.set("services.$.rate", changes.getRate());
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        update.set("updatedAt", LocalDateTime.now()).inc("version", 1);
+        
+        // Positional update, projecting back only the matched element. Projections are not run
+        // through the property mapping, so the element match names the stored key (_id)
+        String tenantId = currentTenantId();
+        Query query = Query.query(byId(tenantId, invoiceId).and("services.id").is(lineId));
+        query.fields().elemMatch("services", Criteria.where("_id").is(lineId));
+        Invoice updated = mongoTemplate.findAndModify(query, update,
+            FindAndModifyOptions.options().returnNew(true), Invoice.class);
+        if (updated == null || updated.getServices() == null || updated.getServices().isEmpty()) {
+            throw new RuntimeException(lineNotFoundMessage(tenantId, invoiceId, lineId));
+        }
+        // The projection holds only the changed line, so the event carries just the id
+        invoiceEventPublisher.publishLocal(InvoiceEvent.Type.UPDATED, invoiceId, null, tenantId);
+        return updated.getServices().get(0);
+    }
+    
+    @Timed(value = INVOICE_OPERATION_METRIC, extraTags = {"operation", "line-remove"}, histogram = true)
+    public void removeServiceLine(String invoiceId, String lineId) {
+        String tenantId = currentTenantId();
+        Query query = Query.query(byId(tenantId, invoiceId).and("services.id").is(lineId));
+        Update update = new Update().pull("services",
+            Query.query(Criteria.where("id").is(lineId)).getQueryObject());
+        if (applyLineUpdate(tenantId, invoiceId, query, update) == 0) {
+            throw new RuntimeException(lineNotFoundMessage(tenantId, invoiceId, lineId));
+        }
+    }
+    
+    private long applyLineUpdate(String tenantId, String invoiceId, Query query, Update update) {
+        update.set("updatedAt", LocalDateTime.now()).inc("version", 1);
+        // Returns just the id, still one round trip
+        query.fields().include("_id");
+        Invoice updated = mongoTemplate.findAndModify(query, update, Invoice.class);
+        if (updated == null) {
+            return 0;
+        }
+        invoiceEventPublisher.publishLocal(InvoiceEvent.Type.UPDATED, invoiceId, null, tenantId);
+        return 1;
+    }
+    
+    private String lineNotFoundMessage(String tenantId, String invoiceId, String lineId) {
+        return invoiceRepository.existsByTenantIdAndId(tenantId, invoiceId)
+            ? "Service line not found with id: " + lineId
+            : "Invoice not found with id: " + invoiceId;
+    }
+    
+    private void validateServiceLine(ServiceItem item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Service line is required");
+        }
+        if (item.getDescription() == null || item.getDescription().trim().isEmpty()) {
+            throw new IllegalArgumentException("Description is required");
+        }
+        if (item.getHours() == null || item.getRate() == null) {
+            throw new IllegalArgumentException("Hours and rate are required");
+        }
+    }
+    
+    /**
+     * Invoices written before tenants existed have no tenantId and would be invisible to every
+     * tenant. Those whose creator is known are handed to that account. The rest (everything
+     * written before createdBy was recorded) go to invoice.tenant.legacy-tenant-id, or to the
+     * only account when there is just one; otherwise they stay unassigned and every startup
+     * logs an error until the property is set.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void assignLegacyInvoiceTenants() {
+        try {
+            Criteria untenanted = Criteria.where("tenantId").exists(false);
+            long assigned = mongoTemplate.updateMulti(
+                Query.query(new Criteria().andOperator(untenanted, Criteria.where("createdBy").ne(null))),
+                AggregationUpdate.update().set("tenantId").toValueOf(Fields.field("createdBy")),
+                Invoice.class).getModifiedCount();
+            if (assigned > 0) {
+                logger.info("Assigned {} legacy invoices to the tenant that created them", assigned);
+            }
+            long orphaned = mongoTemplate.count(Query.query(untenanted), Invoice.class);
+            if (orphaned == 0) {
+                return;
+            }
+            String owner = legacyOwner();
+            if (owner == null) {
+                logger.error("{} invoices have no owner and are visible to no tenant; set invoice.tenant.legacy-tenant-id "
+                    + "to the user id that should own them and restart", orphaned);
+                return;
+            }
+            long adopted = mongoTemplate.updateMulti(Query.query(untenanted), new Update().set("tenantId", owner),
+                Invoice.class).getModifiedCount();
+            logger.info("Assigned {} invoices without an owner to tenant {}", adopted, owner);
+        } catch (RuntimeException e) {
+            logger.warn("Could not assign tenants to legacy invoices: {}", e.getMessage());
+        }
+    }
+    
+    private String legacyOwner() {
+        if (StringUtils.hasText(legacyTenantId)) {
+            if (userRepository.existsById(legacyTenantId.trim())) {
+                return legacyTenantId.trim();
+            }
+            logger.error("invoice.tenant.legacy-tenant-id {} is not a user id", legacyTenantId);
+            return null;
+        }
+        List<User> users = userRepository.findAll(PageRequest.of(0, 2)).getContent();
+        return users.size() == 1 ? users.get(0).getId() : null;
     }
     
     private Invoice convertToEntity(InvoiceDTO dto) {
@@ -93,7 +401,36 @@ public class InvoiceService {
         return invoice;
     }
     
-    private InvoiceDTO convertToDTO(Invoice entity) {
+    /**
+     * Tenant-first criteria for one invoice, matching the {tenantId, _id} index. Another
+     * tenant's invoice is simply not found.
+     */
+    private static Criteria byId(String tenantId, String id) {
+        return Criteria.where("tenantId").is(tenantId).and("id").is(id);
+    }
+    
+    /**
+     * User id put in the security context by JwtAuthenticationFilter, or null outside a request.
+     */
+    static String currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof String userId ? userId : null;
+    }
+    
+    /**
+     * Tenant of the signed-in account. Each account is its own tenant (signup gives it its own
+     * company info), so this is the user id from the token.
+     * @throws IllegalStateException outside an authenticated request, rather than reading across tenants
+     */
+    static String currentTenantId() {
+        String tenantId = currentUserId();
+        if (tenantId == null) {
+            throw new IllegalStateException("No authenticated tenant for invoice access");
+        }
+        return tenantId;
+    }
+    
+    static InvoiceDTO toDTO(Invoice entity) {
         InvoiceDTO dto = new InvoiceDTO();
         dto.setId(entity.getId());
         dto.setInvoiceNumber(entity.getInvoiceNumber());
@@ -107,6 +444,7 @@ public class InvoiceService {
         dto.setTaxRate(entity.getTaxRate());
         dto.setCreatedAt(entity.getCreatedAt() != null ? entity.getCreatedAt().toString() : null);
         dto.setUpdatedAt(entity.getUpdatedAt() != null ? entity.getUpdatedAt().toString() : null);
+        dto.setVersion(entity.getVersion());
         return dto;
     }
 }
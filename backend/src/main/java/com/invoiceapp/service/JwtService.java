@@ -1,16 +1,27 @@
 package com.invoiceapp.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Service
@@ -22,9 +33,43 @@ public class JwtService {
     @Value("${jwt.expiration:900000}") // 15 minutes in milliseconds
     private long expiration;
     
+    @Value("${jwt.cache.max-size:10000}")
+    private long cacheMaxSize;
+    
+    private SecretKey signingKey;
+    private JwtParser parser;
+    
+    // Recently verified tokens keyed by SHA-256 of the token; each entry expires with its token
+    private Cache<String, VerifiedToken> verifiedTokens;
+    
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        long remainingMillis = token.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+    
     private SecretKey getSigningKey() {
-        byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
     }
     
     public String generateToken(String userId, String email) {
@@ -59,11 +104,49 @@ public class JwtService {
     }
     
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+    
+    /**
+     * Verifies signature and expiry with a single parse. Valid tokens are cached until they
+     * expire, so repeat requests with the same token skip the HMAC check and JSON parsing.
+     * Invalid tokens are not cached.
+     * @return the verified token, or empty if the token is malformed, forged or expired
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        String key = hash(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            return cached.isExpired() ? Optional.empty() : Optional.of(cached);
+        }
+        
+        Claims claims;
+        try {
+            // The parser rejects expired tokens itself
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        String userId = claims.get("userId", String.class);
+        if (userId == null || claims.getExpiration() == null) {
+            return Optional.empty();
+        }
+        
+        VerifiedToken verified = new VerifiedToken(userId, claims.get("email", String.class), claims.getExpiration());
+        verifiedTokens.put(key, verified);
+        return Optional.of(verified);
+    }
+    
+    private String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
     
     public Boolean isTokenExpired(String token) {
@@ -74,5 +157,24 @@ public class JwtService {
         final String extractedUserId = extractUserId(token);
         return (extractedUserId.equals(userId) && !isTokenExpired(token));
     }
+    
+    public static class VerifiedToken {
+        private final String userId;
+        private final String email;
+        private final Date expiration;
+        
+        public VerifiedToken(String userId, String email, Date expiration) {
+            this.userId = userId;
+            this.email = email;
+            this.expiration = expiration;
+        }
+        
+        public String getUserId() { return userId; }
+        public String getEmail() { return email; }
+        public Date getExpiration() { return expiration; }
+        
+        public boolean isExpired() {
+            return expiration.before(new Date());
+        }
+    }
 }
-
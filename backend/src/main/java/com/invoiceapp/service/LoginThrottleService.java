@@ -0,0 +1,81 @@
+package com.invoiceapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-window login throttling, checked before any password hashing happens.
+ * Per IP, every attempt counts (bounds the bcrypt work one client can cause);
+ * per account, only failures count and a successful login clears them.
+ */
+@Service
+public class LoginThrottleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginThrottleService.class);
+
+    private final int maxAttemptsPerIp;
+    private final int maxFailuresPerAccount;
+    private final Duration window;
+    private final Cache<String, AtomicInteger> attemptsByIp;
+    private final Cache<String, AtomicInteger> failuresByAccount;
+
+    public LoginThrottleService(@Value("${auth.throttle.ip.max-attempts:30}") int maxAttemptsPerIp,
+                                @Value("${auth.throttle.account.max-failures:5}") int maxFailuresPerAccount,
+                                @Value("${auth.throttle.window-seconds:900}") long windowSeconds,
+                                @Value("${auth.throttle.max-tracked-keys:100000}") long maxTrackedKeys) {
+        this.maxAttemptsPerIp = maxAttemptsPerIp;
+        this.maxFailuresPerAccount = maxFailuresPerAccount;
+        this.window = Duration.ofSeconds(windowSeconds);
+        // Counters are mutated in place, so expireAfterWrite ends the window measured from the first attempt
+        this.attemptsByIp = Caffeine.newBuilder().maximumSize(maxTrackedKeys).expireAfterWrite(window).build();
+        this.failuresByAccount = Caffeine.newBuilder().maximumSize(maxTrackedKeys).expireAfterWrite(window).build();
+    }
+
+    /**
+     * Counts this attempt against the client IP and rejects it if either limit is exceeded.
+     */
+    public void checkAllowed(String email, String clientIp) {
+        AtomicInteger failures = failuresByAccount.getIfPresent(accountKey(email));
+        if (failures != null && failures.get() >= maxFailuresPerAccount) {
+            logger.warn("Login throttled for account after {} failures", failures.get());
+            throw new ThrottledException("Too many failed login attempts for this account", window.getSeconds());
+        }
+        if (clientIp != null) {
+            int attempts = attemptsByIp.get(clientIp, ip -> new AtomicInteger()).incrementAndGet();
+            if (attempts > maxAttemptsPerIp) {
+                logger.warn("Login throttled for client {} after {} attempts", clientIp, attempts);
+                throw new ThrottledException("Too many login attempts from this address", window.getSeconds());
+            }
+        }
+    }
+
+    public void recordFailure(String email) {
+        failuresByAccount.get(accountKey(email), key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    public void recordSuccess(String email) {
+        failuresByAccount.invalidate(accountKey(email));
+    }
+
+    private String accountKey(String email) {
+        return email.toLowerCase().trim();
+    }
+
+    public static class ThrottledException extends RuntimeException {
+        private final long retryAfterSeconds;
+
+        public ThrottledException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    }
+}
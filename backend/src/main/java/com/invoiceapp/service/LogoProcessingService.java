@@ -0,0 +1,114 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.CompanyInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+
+/**
+ * Upload-time pipeline for company logos. validate() runs on the request thread and only
+ * reads the image header; processLogo() runs on the image pool, stores the original and
+ * derives normalized renditions from it:
+ * - PDF JPEG: fixed-width, ready to embed in invoice PDFs
+ * - thumbnail JPEG: small web thumbnail
+ * - WebP: only when an ImageIO WebP writer is installed
+ * Every file goes through the content-addressed store, so re-uploading a logo reuses it.
+ * Rendition URLs are recorded on CompanyInfo as each becomes available.
+ */
+@Service
+public class LogoProcessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogoProcessingService.class);
+
+    private final FileStorageService fileStorageService;
+    private final CompanyInfoService companyInfoService;
+    private final MongoTemplate mongoTemplate;
+    private final long maxBytes;
+    private final int maxDimension;
+    private final int pdfWidth;
+    private final int thumbnailSize;
+    private final int webpSize;
+
+    public LogoProcessingService(FileStorageService fileStorageService,
+                                 CompanyInfoService companyInfoService,
+                                 MongoTemplate mongoTemplate,
+                                 @Value("${image.logo.max-bytes:5242880}") long maxBytes,
+                                 @Value("${image.logo.max-dimension:6000}") int maxDimension,
+                                 @Value("${image.rendition.pdf.width:600}") int pdfWidth,
+                                 @Value("${image.thumbnail.size:160}") int thumbnailSize,
+                                 @Value("${image.rendition.webp.size:512}") int webpSize) {
+        this.fileStorageService = fileStorageService;
+        this.companyInfoService = companyInfoService;
+        this.mongoTemplate = mongoTemplate;
+        this.maxBytes = maxBytes;
+        this.maxDimension = maxDimension;
+        this.pdfWidth = pdfWidth;
+        this.thumbnailSize = thumbnailSize;
+        this.webpSize = webpSize;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the upload is not an accepted image or is too large
+     */
+    public void validate(byte[] content) {
+        ImageRenditions.validate(content, maxBytes, maxDimension);
+    }
+
+    @Async("imageExecutor")
+    public void processLogo(String userId, String companyInfoId, String extension, byte[] content) {
+        String logoUrl;
+        try {
+            logoUrl = fileStorageService.storeContent(content, extension, "logo");
+        } catch (Exception e) {
+            logger.error("Failed to store company logo for company {}: {}", companyInfoId, e.getMessage(), e);
+            return;
+        }
+
+        BufferedImage source;
+        try {
+            source = ImageIO.read(new ByteArrayInputStream(content));
+        } catch (Exception e) {
+            source = null;
+        }
+        if (source == null) {
+            logger.warn("Logo {} could not be decoded, skipping renditions", logoUrl);
+            return;
+        }
+
+        Update update = new Update();
+        try {
+            byte[] pdfJpeg = ImageRenditions.toJpeg(ImageRenditions.fit(source, pdfWidth, pdfWidth), 0.85f);
+            update.set("companyLogoPdfUrl", fileStorageService.storeContent(pdfJpeg, ".jpg", "rendition"));
+
+            byte[] thumbnail = ImageRenditions.toJpeg(ImageRenditions.fit(source, thumbnailSize, thumbnailSize), 0.8f);
+            update.set("companyLogoThumbnailUrl", fileStorageService.storeContent(thumbnail, ".jpg", "rendition"));
+
+            byte[] webp = ImageRenditions.toWebp(ImageRenditions.fit(source, webpSize, webpSize), 0.8f);
+            if (webp != null) {
+                update.set("companyLogoWebpUrl", fileStorageService.storeContent(webp, ".webp", "rendition"));
+            } else {
+                logger.debug("No WebP writer installed, skipping WebP rendition for {}", logoUrl);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to create logo renditions for {}: {}", logoUrl, e.getMessage());
+        }
+
+        if (!update.getUpdateObject().isEmpty()) {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(companyInfoId)),
+                    update.set("updatedAt", LocalDateTime.now()), CompanyInfo.class);
+            companyInfoService.evict(userId);
+            logger.debug("Logo renditions ready for company {}", companyInfoId);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.invoiceapp.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs bcrypt on the bounded authExecutor instead of the request thread.
+ * When the pool and its queue are full, submission throws RejectedExecutionException
+ * straight away so callers can answer 503 instead of piling up work.
+ */
+@Service
+public class PasswordHashingService {
+
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final ThreadPoolTaskExecutor authExecutor;
+    private final int retryAfterSeconds;
+
+    public PasswordHashingService(@Qualifier("authExecutor") ThreadPoolTaskExecutor authExecutor,
+                                  @Value("${auth.hash.retry-after-seconds:2}") int retryAfterSeconds) {
+        this.authExecutor = authExecutor;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return CompletableFuture.supplyAsync(() -> passwordEncoder.matches(rawPassword, encodedPassword), authExecutor);
+    }
+
+    public CompletableFuture<String> encode(String rawPassword) {
+        return CompletableFuture.supplyAsync(() -> passwordEncoder.encode(rawPassword), authExecutor);
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
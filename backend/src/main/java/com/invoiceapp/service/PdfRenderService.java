@@ -0,0 +1,161 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs PdfService on the dedicated pdfRenderExecutor.
+ * A render is admitted only while a pool thread or queue slot is free; otherwise
+ * RejectedExecutionException is thrown immediately so callers can answer 503.
+ */
+@Service
+public class PdfRenderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfRenderService.class);
+
+    /**
+     * Request attribute holding the release action of a streamed render's slot. WebConfig runs
+     * it when async processing ends, for bodies that never ran (rejected, or timed out in the queue).
+     */
+    public static final String PERMIT_ATTRIBUTE = PdfRenderService.class.getName() + ".permit";
+
+    private final PdfService pdfService;
+    private final ThreadPoolTaskExecutor pdfRenderExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Semaphore admission;
+    private final int retryAfterSeconds;
+
+    private final Timer streamTimer;
+    private final Timer bufferTimer;
+    private final Counter rejectedCounter;
+    private final DistributionSummary sizeSummary;
+
+    public PdfRenderService(PdfService pdfService,
+                            @Qualifier("pdfRenderExecutor") ThreadPoolTaskExecutor pdfRenderExecutor,
+                            MeterRegistry meterRegistry,
+                            @Value("${pdf.render.retry-after-seconds:5}") int retryAfterSeconds) {
+        this.pdfService = pdfService;
+        this.pdfRenderExecutor = pdfRenderExecutor;
+        this.meterRegistry = meterRegistry;
+        this.admission = new Semaphore(pdfRenderExecutor.getMaxPoolSize() + pdfRenderExecutor.getQueueCapacity());
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        this.streamTimer = Timer.builder("pdf.render.duration")
+                .description("Time to render an invoice PDF")
+                .tag("mode", "stream")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.bufferTimer = Timer.builder("pdf.render.duration")
+                .description("Time to render an invoice PDF")
+                .tag("mode", "buffer")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sizeSummary = DistributionSummary.builder("pdf.render.size")
+                .description("Size of rendered invoice PDFs")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("pdf.render.rejected")
+                .description("Renders refused because the render pool was saturated")
+                .register(meterRegistry);
+        Gauge.builder("pdf.render.queue.depth", pdfRenderExecutor,
+                        executor -> executor.getThreadPoolExecutor().getQueue().size())
+                .description("Renders waiting for a render thread")
+                .register(meterRegistry);
+        Gauge.builder("pdf.render.active", pdfRenderExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Renders currently running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserves a render slot and returns a body that renders straight into the response.
+     * The body runs on the MVC async executor, which WebConfig points at pdfRenderExecutor.
+     */
+    public StreamingResponseBody streamInvoicePdf(InvoiceDTO invoice) {
+        Runnable permit = acquire();
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(PERMIT_ATTRIBUTE, permit, RequestAttributes.SCOPE_REQUEST);
+        }
+        return outputStream -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            CountingOutputStream counted = new CountingOutputStream(outputStream);
+            try {
+                pdfService.writeInvoicePdf(invoice, counted);
+                sizeSummary.record(counted.getByteCount());
+            } finally {
+                sample.stop(streamTimer);
+                permit.run();
+            }
+        };
+    }
+
+    /**
+     * Renders to a byte[] on the render pool. The calling thread is not used for the work.
+     */
+    public CompletableFuture<byte[]> renderInvoicePdf(InvoiceDTO invoice) {
+        Runnable permit = acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                try {
+                    byte[] pdf = pdfService.generateInvoicePdf(invoice);
+                    sizeSummary.record(pdf.length);
+                    return pdf;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    sample.stop(bufferTimer);
+                    permit.run();
+                }
+            }, pdfRenderExecutor);
+        } catch (RejectedExecutionException e) {
+            permit.run();
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return action giving the slot back; only its first run releases
+     */
+    private Runnable acquire() {
+        if (!admission.tryAcquire()) {
+            rejectedCounter.increment();
+            logger.warn("PDF render pool saturated (queue depth {}), rejecting render",
+                    pdfRenderExecutor.getThreadPoolExecutor().getQueue().size());
+            throw new RejectedExecutionException("PDF rendering is at capacity, retry later");
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                admission.release();
+            }
+        };
+    }
+}
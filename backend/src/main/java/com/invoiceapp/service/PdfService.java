@@ -3,29 +3,39 @@ package com.invoiceapp.service;
 import com.invoiceapp.dto.InvoiceDTO;
 import com.invoiceapp.entity.ServiceItem;
 import com.itextpdf.io.font.constants.StandardFonts;
-import com.itextpdf.io.image.ImageData;
 import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.events.Event;
+import com.itextpdf.kernel.events.IEventHandler;
+import com.itextpdf.kernel.events.PdfDocumentEvent;
 import com.itextpdf.kernel.font.PdfFont;
 import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.*;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.layout.Canvas;
 import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Div;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
 import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
 import com.itextpdf.io.font.constants.StandardFonts;
 import com.itextpdf.io.font.PdfEncodings;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.*;
-import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 
 @Service
@@ -33,10 +43,36 @@ public class PdfService {
 
     private static final float PAGE_WIDTH = 595.28f;
     private static final float PAGE_HEIGHT = 841.89f;
+    private static final float PAGE_MARGIN = 36f;
 
-    public byte[] generateInvoicePdf(InvoiceDTO invoice) throws IOException {
+    // Large-table mode: completed rows are laid out and their pages flushed every N rows
+    private static final int ROWS_PER_FLUSH = 50;
+    private static final float[] SERVICE_COLUMN_WIDTHS = {6, 40, 11, 14, 14, 15};
+    private static final String[] SERVICE_COLUMN_HEADERS = {"#", "Description", "Hours", "Rate", "Amount", "Running Total"};
+
+    // Header logo: max 200px, 40% JPEG quality keeps emailed PDFs small
+    private static final String HEADER_LOGO_RESOURCE = "oryfolks-logo.png";
+    private static final int HEADER_LOGO_MAX_DIMENSION = 200;
+    private static final float HEADER_LOGO_QUALITY = 0.4f;
+
+    private volatile HeaderLogo headerLogo;
+    private volatile boolean headerLogoLoaded;
 
+    @Observed(name = "pdf.generate", contextualName = "pdf-generate")
+    public byte[] generateInvoicePdf(InvoiceDTO invoice) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeInvoicePdf(invoice, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Renders the invoice into the given stream. Service lines flow through a paginated
+     * table with a repeated header, and each finished page is flushed immediately, so
+     * memory stays bounded regardless of the number of lines.
+     * The stream is flushed but not closed; it stays owned by the caller.
+     */
+    @Observed(name = "pdf.generate", contextualName = "pdf-generate")
+    public void writeInvoicePdf(InvoiceDTO invoice, OutputStream out) throws IOException {
 
         // ✅ ENABLE MAX COMPRESSION & OPTIMIZATIONS
         WriterProperties props = new WriterProperties()
@@ -46,9 +82,12 @@ public class PdfService {
                 .addXmpMetadata()  // Add XMP metadata for better compression
                 .setPdfVersion(PdfVersion.PDF_2_0);  // Use latest PDF version for better compression
 
-        PdfWriter pdfWriter = new PdfWriter(baos, props);
+        PdfWriter pdfWriter = new PdfWriter(out, props);
+        pdfWriter.setCloseStream(false);
         PdfDocument pdfDoc = new PdfDocument(pdfWriter);
-        Document document = new Document(pdfDoc);
+        // immediateFlush = true: pages are written out as soon as layout moves past them
+        Document document = new Document(pdfDoc, PageSize.A4, true);
+        document.setMargins(PAGE_MARGIN, PAGE_MARGIN, PAGE_MARGIN, PAGE_MARGIN);
 
         try {
             // Use standard fonts without embedding to reduce size
@@ -64,91 +103,25 @@ public class PdfService {
 
             DecimalFormat df = new DecimalFormat("#,##0.00");
 
-            double subTotal = invoice.getServices().stream()
-                    .mapToDouble(s -> s.getHours() * s.getRate())
-                    .sum();
-
-            double cgstRate = invoice.getTaxRate() != null ? invoice.getTaxRate() / 2.0 : 0.0;
-            double sgstRate = cgstRate;
-
-            double cgstAmount = subTotal * (cgstRate / 100.0);
-            double sgstAmount = subTotal * (sgstRate / 100.0);
-            double grandTotal = subTotal + cgstAmount + sgstAmount;
+            pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new PageNumberHandler(regularFont));
 
             String formattedDate = formatDate(invoice.getDate());
             float yPos = convertMmToPoints(18);
 
-            /* ======================================================
-               ✅ OPTIMIZED LOGO HANDLING WITH FURTHER COMPRESSION
-               ====================================================== */
-            try (InputStream logoStream = getClass().getClassLoader().getResourceAsStream("oryfolks-logo.png")) {
-
-                if (logoStream != null) {
-
-                    BufferedImage original = ImageIO.read(logoStream);
-
-                    // ✅ OPTIMIZE IMAGE FOR EMAIL
-                    // Further reduce size for email
-                    int maxDimension = 200;  // Reduced from 300px to 200px
-                    int targetWidth, targetHeight;
-                    
-                    // Maintain aspect ratio
-                    if (original.getWidth() > original.getHeight()) {
-                        targetWidth = Math.min(maxDimension, original.getWidth());
-                        targetHeight = (int) ((double) original.getHeight() / original.getWidth() * targetWidth);
-                    } else {
-                        targetHeight = Math.min(maxDimension, original.getHeight());
-                        targetWidth = (int) ((double) original.getWidth() / original.getHeight() * targetHeight);
-                    }
-
-                    // Create a TYPE_INT_RGB image (smaller than ARGB)
-                    BufferedImage resized = new BufferedImage(
-                            targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-
-                    // Use high-quality downscaling
-                    Graphics2D g = resized.createGraphics();
-                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-                    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                    g.drawImage(original, 0, 0, targetWidth, targetHeight, null);
-                    g.dispose();
-
-                    // Convert to JPEG with aggressive compression
-                    ByteArrayOutputStream imgOut = new ByteArrayOutputStream();
-                    // Reduce quality further for email (40%)
-                    float quality = 0.4f;
-                    
-                    // Get JPEG writer
-                    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-                    if (!writers.hasNext()) {
-                        throw new IllegalStateException("No JPEG writers found");
-                    }
-                    
-                    ImageWriter jpgWriter = writers.next();
-                    ImageWriteParam jpgWriteParam = jpgWriter.getDefaultWriteParam();
-                    jpgWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    jpgWriteParam.setCompressionQuality(quality);
-                    
-                    try (ImageOutputStream ios = ImageIO.createImageOutputStream(imgOut)) {
-                        jpgWriter.setOutput(ios);
-                        IIOImage outputImage = new IIOImage(resized, null, null);
-                        jpgWriter.write(null, outputImage, jpgWriteParam);
-                        jpgWriter.dispose();
-                    }
-
-                    ImageData logoData = ImageDataFactory.create(imgOut.toByteArray());
-                    Image logo = new Image(logoData);
-
-                    float logoWidth = convertMmToPoints(50);
-                    float logoHeight = logoWidth * targetHeight / targetWidth;
-
-                    logo.setFixedPosition(convertMmToPoints(14),
-                            PAGE_HEIGHT - yPos - logoHeight,
-                            logoWidth);
-
-                    document.add(logo);
-                    yPos += logoHeight + convertMmToPoints(4);
-                }
+            // Logo is decoded, resized and JPEG-encoded once, then reused for every invoice
+            HeaderLogo headerLogo = getHeaderLogo();
+            if (headerLogo != null) {
+                Image logo = new Image(ImageDataFactory.create(headerLogo.jpeg));
+
+                float logoWidth = convertMmToPoints(50);
+                float logoHeight = logoWidth * headerLogo.height / headerLogo.width;
+
+                logo.setFixedPosition(convertMmToPoints(14),
+                        PAGE_HEIGHT - yPos - logoHeight,
+                        logoWidth);
+
+                document.add(logo);
+                yPos += logoHeight + convertMmToPoints(4);
             }
 
             Paragraph companyName = new Paragraph("Ory Folks Pvt Ltd")
@@ -176,16 +149,194 @@ public class PdfService {
                     .setFixedPosition(rightX, PAGE_HEIGHT - yPos, convertMmToPoints(50))
                     .setTextAlignment(TextAlignment.RIGHT));
 
-            // ---- REST OF YOUR CONTENT (UNCHANGED) ----
-            // Your text/table logic is already optimal and lightweight
+            yPos += convertMmToPoints(10);
+
+            // Push the flowing content below the fixed-position header on the first page
+            float headerBottom = Math.max(yPos, convertMmToPoints(40));
+            document.add(new Div().setHeight(Math.max(0, headerBottom - PAGE_MARGIN)));
+
+            addBillTo(document, invoice, boldFont, regularFont);
+
+            double subTotal = addServiceTable(document, invoice.getServices(), boldFont, regularFont, df);
+
+            double cgstRate = invoice.getTaxRate() != null ? invoice.getTaxRate() / 2.0 : 0.0;
+            double sgstRate = cgstRate;
+
+            double cgstAmount = subTotal * (cgstRate / 100.0);
+            double sgstAmount = subTotal * (sgstRate / 100.0);
+            double grandTotal = subTotal + cgstAmount + sgstAmount;
+
+            addTotals(document, subTotal, cgstRate, cgstAmount, sgstRate, sgstAmount, grandTotal,
+                    boldFont, regularFont, df);
 
             document.close();
 
         } catch (Exception e) {
             throw new IOException("Failed to generate PDF", e);
         }
+    }
 
-        return baos.toByteArray();
+    private void addBillTo(Document document, InvoiceDTO invoice, PdfFont boldFont, PdfFont regularFont) {
+        document.add(new Paragraph("Bill To").setFont(boldFont).setFontSize(11).setMarginBottom(2));
+        String[] lines = {
+                invoice.getEmployeeName(),
+                invoice.getEmployeeId() != null ? "Employee ID: " + invoice.getEmployeeId() : null,
+                invoice.getEmployeeEmail(),
+                invoice.getEmployeeAddress(),
+                invoice.getEmployeeMobile()
+        };
+        for (String line : lines) {
+            if (line != null && !line.isBlank()) {
+                document.add(new Paragraph(line).setFont(regularFont).setFontSize(10)
+                        .setMarginTop(0).setMarginBottom(0));
+            }
+        }
+        document.add(new Div().setHeight(convertMmToPoints(6)));
+    }
+
+    /**
+     * Adds the service lines as a large table: the header repeats on every page and rows are
+     * flushed in batches instead of being held until the table is complete.
+     * @return the invoice subtotal
+     */
+    private double addServiceTable(Document document, List<ServiceItem> services,
+                                   PdfFont boldFont, PdfFont regularFont, DecimalFormat df) {
+        Table table = new Table(UnitValue.createPercentArray(SERVICE_COLUMN_WIDTHS), true)
+                .useAllAvailableWidth();
+        for (String header : SERVICE_COLUMN_HEADERS) {
+            table.addHeaderCell(new Cell()
+                    .add(new Paragraph(header).setFont(boldFont).setFontSize(9))
+                    .setBackgroundColor(ColorConstants.LIGHT_GRAY)
+                    .setTextAlignment("Description".equals(header) ? TextAlignment.LEFT : TextAlignment.RIGHT));
+        }
+        document.add(table);
+
+        double runningTotal = 0.0;
+        int row = 0;
+        if (services != null) {
+            for (ServiceItem item : services) {
+                if (item == null) {
+                    continue;
+                }
+                double hours = item.getHours() != null ? item.getHours() : 0.0;
+                double rate = item.getRate() != null ? item.getRate() : 0.0;
+                double amount = hours * rate;
+                runningTotal += amount;
+                row++;
+
+                table.addCell(bodyCell(String.valueOf(row), regularFont, TextAlignment.RIGHT));
+                table.addCell(bodyCell(item.getDescription() != null ? item.getDescription() : "", regularFont, TextAlignment.LEFT));
+                table.addCell(bodyCell(df.format(hours), regularFont, TextAlignment.RIGHT));
+                table.addCell(bodyCell(df.format(rate), regularFont, TextAlignment.RIGHT));
+                table.addCell(bodyCell(df.format(amount), regularFont, TextAlignment.RIGHT));
+                table.addCell(bodyCell(df.format(runningTotal), regularFont, TextAlignment.RIGHT));
+
+                if (row % ROWS_PER_FLUSH == 0) {
+                    table.flush();
+                }
+            }
+        }
+        if (row == 0) {
+            table.addCell(new Cell(1, SERVICE_COLUMN_HEADERS.length)
+                    .add(new Paragraph("No services").setFont(regularFont).setFontSize(9))
+                    .setTextAlignment(TextAlignment.CENTER));
+        }
+        table.complete();
+        return runningTotal;
+    }
+
+    private Cell bodyCell(String text, PdfFont font, TextAlignment alignment) {
+        return new Cell().add(new Paragraph(text).setFont(font).setFontSize(9)).setTextAlignment(alignment);
+    }
+
+    private void addTotals(Document document, double subTotal, double cgstRate, double cgstAmount,
+                           double sgstRate, double sgstAmount, double grandTotal,
+                           PdfFont boldFont, PdfFont regularFont, DecimalFormat df) {
+        Table totals = new Table(UnitValue.createPercentArray(new float[]{70, 30}))
+                .useAllAvailableWidth()
+                .setMarginTop(convertMmToPoints(4))
+                .setKeepTogether(true);
+        addTotalRow(totals, "Subtotal", df.format(subTotal), regularFont);
+        addTotalRow(totals, "CGST (" + df.format(cgstRate) + "%)", df.format(cgstAmount), regularFont);
+        addTotalRow(totals, "SGST (" + df.format(sgstRate) + "%)", df.format(sgstAmount), regularFont);
+        addTotalRow(totals, "Grand Total", df.format(grandTotal), boldFont);
+        document.add(totals);
+    }
+
+    private void addTotalRow(Table table, String label, String value, PdfFont font) {
+        table.addCell(new Cell().add(new Paragraph(label).setFont(font).setFontSize(10))
+                .setTextAlignment(TextAlignment.RIGHT));
+        table.addCell(new Cell().add(new Paragraph(value).setFont(font).setFontSize(10))
+                .setTextAlignment(TextAlignment.RIGHT));
+    }
+
+    /**
+     * Stamps "Page N" in the bottom margin as each page is finished.
+     */
+    private static class PageNumberHandler implements IEventHandler {
+        private final PdfFont font;
+
+        PageNumberHandler(PdfFont font) {
+            this.font = font;
+        }
+
+        @Override
+        public void handleEvent(Event event) {
+            PdfDocumentEvent docEvent = (PdfDocumentEvent) event;
+            PdfDocument pdf = docEvent.getDocument();
+            PdfPage page = docEvent.getPage();
+            Rectangle pageSize = page.getPageSize();
+            PdfCanvas pdfCanvas = new PdfCanvas(page.newContentStreamAfter(), page.getResources(), pdf);
+            try (Canvas canvas = new Canvas(pdfCanvas, pageSize)) {
+                canvas.setFont(font).setFontSize(8);
+                canvas.showTextAligned("Page " + pdf.getPageNumber(page),
+                        pageSize.getWidth() / 2, PAGE_MARGIN / 2, TextAlignment.CENTER);
+            }
+        }
+    }
+
+    /**
+     * Loads the header logo on first use. A missing or unreadable resource is remembered too,
+     * so renders never retry the decode.
+     */
+    private HeaderLogo getHeaderLogo() {
+        if (!headerLogoLoaded) {
+            synchronized (this) {
+                if (!headerLogoLoaded) {
+                    headerLogo = loadHeaderLogo();
+                    headerLogoLoaded = true;
+                }
+            }
+        }
+        return headerLogo;
+    }
+
+    private HeaderLogo loadHeaderLogo() {
+        try (InputStream logoStream = getClass().getClassLoader().getResourceAsStream(HEADER_LOGO_RESOURCE)) {
+            if (logoStream == null) {
+                return null;
+            }
+            BufferedImage original = ImageIO.read(logoStream);
+            if (original == null) {
+                return null;
+            }
+            BufferedImage resized = ImageRenditions.fit(original, HEADER_LOGO_MAX_DIMENSION, HEADER_LOGO_MAX_DIMENSION);
+            return new HeaderLogo(ImageRenditions.toJpeg(resized, HEADER_LOGO_QUALITY), resized.getWidth(), resized.getHeight());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class HeaderLogo {
+        private final byte[] jpeg;
+        private final int width;
+        private final int height;
+
+        HeaderLogo(byte[] jpeg, int width, int height) {
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+        }
     }
 
     private float convertMmToPoints(float mm) {
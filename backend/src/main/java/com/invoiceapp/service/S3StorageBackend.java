@@ -0,0 +1,230 @@
+package com.invoiceapp.service;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps files in an S3-compatible bucket so every node sees the same objects.
+ * Set storage.s3.endpoint and storage.s3.path-style=true for MinIO or other stand-ins.
+ * Files above the multipart threshold are uploaded in parts read straight from the temp
+ * file; reads use ranged GETs and are streamed, never buffered whole.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class S3StorageBackend implements StorageBackend, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    // S3 rejects parts smaller than 5 MiB (except the last)
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final String keyPrefix;
+    private final long multipartThreshold;
+    private final long partSize;
+
+    public S3StorageBackend(@Value("${storage.s3.bucket}") String bucket,
+                            @Value("${storage.s3.region:us-east-1}") String region,
+                            @Value("${storage.s3.endpoint:}") String endpoint,
+                            @Value("${storage.s3.access-key:}") String accessKey,
+                            @Value("${storage.s3.secret-key:}") String secretKey,
+                            @Value("${storage.s3.path-style:false}") boolean pathStyle,
+                            @Value("${storage.s3.key-prefix:}") String keyPrefix,
+                            @Value("${storage.s3.multipart-threshold-bytes:16777216}") long multipartThreshold,
+                            @Value("${storage.s3.part-size-bytes:8388608}") long partSize) {
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+        this.multipartThreshold = multipartThreshold;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3Configuration serviceConfiguration = S3Configuration.builder()
+                .pathStyleAccessEnabled(pathStyle)
+                .build();
+
+        S3ClientBuilder clientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(serviceConfiguration);
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(serviceConfiguration);
+        if (!endpoint.isBlank()) {
+            clientBuilder.endpointOverride(URI.create(endpoint));
+            presignerBuilder.endpointOverride(URI.create(endpoint));
+        }
+        this.s3 = clientBuilder.build();
+        this.presigner = presignerBuilder.build();
+        logger.info("Storing files in S3 bucket {} ({})", bucket, endpoint.isBlank() ? region : endpoint);
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return head(key).isPresent();
+    }
+
+    @Override
+    public void put(String key, Path source, long size, String contentType) throws IOException {
+        try {
+            if (size < multipartThreshold) {
+                s3.putObject(b -> b.bucket(bucket).key(objectKey(key)).contentType(contentType),
+                        RequestBody.fromFile(source));
+            } else {
+                putMultipart(objectKey(key), source, size, contentType);
+            }
+        } catch (SdkException e) {
+            throw new IOException("S3 upload of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void putMultipart(String objectKey, Path source, long size, String contentType) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey).contentType(contentType))
+                .uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                long length = Math.min(partSize, size - offset);
+                long partOffset = offset;
+                int number = partNumber;
+                // The provider re-opens the file range, so the SDK can retry a part without buffering it
+                RequestBody body = RequestBody.fromContentProvider(
+                        () -> openRange(source, partOffset, length), length, contentType);
+                String etag = s3.uploadPart(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                        .partNumber(number).contentLength(length), body).eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(etag).build());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts)));
+        } catch (RuntimeException e) {
+            try {
+                s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+            } catch (SdkException abortError) {
+                logger.warn("Could not abort multipart upload {} of {}: {}", uploadId, objectKey, abortError.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        try {
+            return s3.getObjectAsBytes(b -> b.bucket(bucket).key(objectKey(key))).asByteArray();
+        } catch (SdkException e) {
+            throw new IOException("S3 read of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream stream(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            String range = "bytes=" + offset + "-" + (offset + length - 1);
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)).range(range));
+        } catch (SdkException e) {
+            throw new IOException("S3 read of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<ObjectInfo> stat(String key) throws IOException {
+        return head(key).map(head -> new ObjectInfo(head.contentLength(), head.lastModified().toEpochMilli()));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // S3 deletes are idempotent and do not report whether anything was there
+        if (!exists(key)) {
+            return false;
+        }
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(objectKey(key)));
+            return true;
+        } catch (SdkException e) {
+            throw new IOException("S3 delete of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<String> presign(String key, Duration ttl) {
+        return Optional.of(presigner.presignGetObject(p -> p.signatureDuration(ttl)
+                .getObjectRequest(b -> b.bucket(bucket).key(objectKey(key)))).url().toString());
+    }
+
+    @Override
+    public Optional<Path> localFile(String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void destroy() {
+        presigner.close();
+        s3.close();
+    }
+
+    private Optional<HeadObjectResponse> head(String key) throws IOException {
+        try {
+            return Optional.of(s3.headObject(b -> b.bucket(bucket).key(objectKey(key))));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("S3 lookup of " + key + " failed: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("S3 lookup of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+
+    private static InputStream openRange(Path source, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            channel.position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
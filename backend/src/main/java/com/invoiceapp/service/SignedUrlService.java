@@ -0,0 +1,90 @@
+package com.invoiceapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Issues and checks expiring download links of the form
+ * /api/files/signed/{name}?expires={epochSeconds}&sig={HMAC-SHA256(name, expires)}.
+ * Validation needs only the shared secret, so serving a link costs no database or
+ * session lookup.
+ */
+@Service
+public class SignedUrlService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignedUrlService.class);
+
+    public static final String PATH_PREFIX = "/api/files/signed/";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    public enum Verdict { VALID, EXPIRED, INVALID }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public SignedUrlService(@Value("${file.signing.secret:}") String secret) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            // Links then stop working on restart and differ between nodes
+            logger.warn("file.signing.secret is not set, using a random key for signed download links");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * @param fileUrl URL returned by FileStorageService, e.g. "/uploads/ab/cd/abcd...pdf"
+     * @return path and query of the signed link, to be prefixed with the public base URL
+     */
+    public String sign(String fileUrl, Duration ttl) {
+        String name = fileUrl.substring(fileUrl.lastIndexOf('/') + 1);
+        long expires = Instant.now().plus(ttl).getEpochSecond();
+        return PATH_PREFIX + name + "?expires=" + expires + "&sig=" + signature(name, expires);
+    }
+
+    /**
+     * The signature is checked before the expiry so a tampered expiry reads as INVALID.
+     */
+    public Verdict verify(String name, long expires, String signature) {
+        if (signature == null) {
+            return Verdict.INVALID;
+        }
+        byte[] expected = signature(name, expires).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+            return Verdict.INVALID;
+        }
+        return Instant.now().getEpochSecond() > expires ? Verdict.EXPIRED : Verdict.VALID;
+    }
+
+    private String signature(String name, long expires) {
+        Mac mac = macs.get();
+        byte[] digest = mac.doFinal((name + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+}
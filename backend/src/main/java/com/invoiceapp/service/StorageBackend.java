@@ -0,0 +1,74 @@
+package com.invoiceapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Where FileStorageService keeps file bytes. Keys are relative, slash-separated paths
+ * such as "9f/86/9f86d0...png"; naming, hashing, reference counting and metadata caching
+ * stay in FileStorageService.
+ * Selected with storage.backend: "local" (default, the upload directory) or "s3"
+ * (any S3-compatible store, e.g. AWS or MinIO), which lets several nodes share files.
+ */
+public interface StorageBackend {
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Stores a fully written local file under key, replacing any existing object.
+     * The source may be moved or consumed; the caller deletes it if it is still there.
+     */
+    void put(String key, Path source, long size, String contentType) throws IOException;
+
+    byte[] get(String key) throws IOException;
+
+    /**
+     * Streams length bytes starting at offset. The caller closes the stream.
+     */
+    InputStream stream(String key, long offset, long length) throws IOException;
+
+    Optional<ObjectInfo> stat(String key) throws IOException;
+
+    /**
+     * @return true if an object was deleted
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Deletes an object for FileStorageService.reclaim, which leases its record first.
+     * stillLeased re-checks that lease as late as the backend allows: once it is lost, a
+     * store of the same content has taken over and the object must stay.
+     * @return true if an object was deleted
+     */
+    default boolean reclaim(String key, BooleanSupplier stillLeased) throws IOException {
+        return stillLeased.getAsBoolean() && delete(key);
+    }
+
+    /**
+     * Time-limited URL a client can fetch the object from directly, or empty when the
+     * backend has no such URLs (local disk).
+     */
+    Optional<String> presign(String key, Duration ttl);
+
+    /**
+     * The object as a local file, for zero-copy serving; empty for remote backends.
+     */
+    Optional<Path> localFile(String key);
+
+    class ObjectInfo {
+        private final long size;
+        private final long lastModified; // epoch millis
+
+        public ObjectInfo(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+    }
+}
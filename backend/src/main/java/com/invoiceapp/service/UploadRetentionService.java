@@ -0,0 +1,294 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.CompanyInfo;
+import com.invoiceapp.entity.StoredFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Periodically deletes uploads nobody needs any more:
+ * - categories with a TTL ("email-link", "pdf", "file") once not re-stored for that long
+ * - blobs whose reference count dropped to zero
+ * - logos and renditions no CompanyInfo points at (after a grace period, since renditions
+ *   are written before the company document is updated)
+ * - legacy flat files with the same rules, and temp files left behind by crashed writes
+ * Each run handles at most batch-size candidates per rule and paces deletions, so a
+ * backlog is worked off over several runs instead of in one long I/O burst.
+ * Invoices hold no file references; invoice PDFs are only kept as email links.
+ */
+@Service
+@ConditionalOnProperty(name = "file.retention.enabled", havingValue = "true", matchIfMissing = true)
+public class UploadRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadRetentionService.class);
+
+    private static final List<String> LOGO_CATEGORIES = List.of("logo", "rendition");
+    private static final List<String> LOGO_URL_FIELDS =
+            List.of("companyLogoUrl", "companyLogoThumbnailUrl", "companyLogoPdfUrl", "companyLogoWebpUrl");
+    private static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+
+    private final FileStorageService fileStorageService;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Path uploadDirectory;
+    private final Map<String, Duration> categoryTtls = new HashMap<>();
+    private final Duration orphanGrace;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    // Resume points so each run continues where the previous one stopped
+    private String lastOrphanScanId;
+    private final Set<String> legacyKept = new HashSet<>();
+
+    public UploadRetentionService(FileStorageService fileStorageService,
+                                  MongoTemplate mongoTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Qualifier("uploadDirectory") Path uploadDirectory,
+                                  @Value("${file.retention.email-link-ttl-days:7}") long emailLinkTtlDays,
+                                  @Value("${file.retention.pdf-ttl-days:7}") long pdfTtlDays,
+                                  @Value("${file.retention.upload-ttl-days:0}") long uploadTtlDays,
+                                  @Value("${file.retention.orphan-grace-hours:24}") long orphanGraceHours,
+                                  @Value("${file.retention.batch-size:200}") int batchSize,
+                                  @Value("${file.retention.deletes-per-second:50}") int deletesPerSecond) {
+        this.fileStorageService = fileStorageService;
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.uploadDirectory = uploadDirectory;
+        // 0 keeps files of that category forever
+        if (emailLinkTtlDays > 0) {
+            categoryTtls.put("email-link", Duration.ofDays(emailLinkTtlDays));
+        }
+        if (pdfTtlDays > 0) {
+            categoryTtls.put("pdf", Duration.ofDays(pdfTtlDays));
+        }
+        if (uploadTtlDays > 0) {
+            categoryTtls.put("file", Duration.ofDays(uploadTtlDays));
+        }
+        this.orphanGrace = Duration.ofHours(orphanGraceHours);
+        this.batchSize = batchSize;
+        this.pauseMillis = deletesPerSecond > 0 ? 1000L / deletesPerSecond : 0;
+    }
+
+    @Scheduled(initialDelayString = "${file.retention.initial-delay-ms:60000}",
+               fixedDelayString = "${file.retention.interval-ms:600000}")
+    public void sweep() {
+        try {
+            for (Map.Entry<String, Duration> ttl : categoryTtls.entrySet()) {
+                sweepExpired(ttl.getKey(), ttl.getValue());
+            }
+            sweepUnreferenced();
+            sweepOrphanedLogos();
+            sweepLegacyFiles();
+            sweepStaleTempFiles();
+        } catch (Exception e) {
+            // Keep the schedule alive; the next run picks up where this one failed
+            logger.error("Upload retention sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sweepExpired(String category, Duration ttl) {
+        LocalDateTime cutoff = LocalDateTime.now().minus(ttl);
+        Criteria expired = Criteria.where("category").is(category).and("lastReferencedAt").lt(cutoff);
+        Query query = new Query(expired).with(Sort.by("lastReferencedAt")).limit(batchSize);
+        query.fields().include("_id");
+        for (StoredFile file : mongoTemplate.find(query, StoredFile.class)) {
+            reclaim(file.getId(), Criteria.where("lastReferencedAt").lt(cutoff), category);
+        }
+    }
+
+    private void sweepUnreferenced() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(orphanGrace);
+        Criteria unreferenced = Criteria.where("refCount").lte(0).and("lastReferencedAt").lt(cutoff);
+        Query query = new Query(unreferenced).limit(batchSize);
+        query.fields().include("_id");
+        for (StoredFile file : mongoTemplate.find(query, StoredFile.class)) {
+            reclaim(file.getId(), Criteria.where("refCount").lte(0), "unreferenced");
+        }
+    }
+
+    /**
+     * Walks logo blobs in id order, batch-size at a time, and deletes those that no
+     * CompanyInfo references. One company query covers the whole batch.
+     */
+    private void sweepOrphanedLogos() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(orphanGrace);
+        Criteria candidates = Criteria.where("category").in(LOGO_CATEGORIES).and("createdAt").lt(cutoff);
+        if (lastOrphanScanId != null) {
+            candidates = candidates.and("_id").gt(lastOrphanScanId);
+        }
+        Query query = new Query(candidates).with(Sort.by("_id")).limit(batchSize);
+        query.fields().include("_id");
+        List<StoredFile> batch = mongoTemplate.find(query, StoredFile.class);
+        // A short batch means the end was reached; start over next run
+        lastOrphanScanId = batch.size() < batchSize ? null : batch.get(batch.size() - 1).getId();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> namesByUrl = new HashMap<>();
+        for (StoredFile file : batch) {
+            namesByUrl.put(fileStorageService.toUrl(file.getId()), file.getId());
+        }
+        Set<String> referenced = referencedLogoUrls(namesByUrl.keySet());
+        for (Map.Entry<String, String> entry : namesByUrl.entrySet()) {
+            if (!referenced.contains(entry.getKey())) {
+                // Only if still unreferenced by a newer store
+                reclaim(entry.getValue(), Criteria.where("lastReferencedAt").lt(cutoff), "orphaned-logo");
+            }
+        }
+    }
+
+    private Set<String> referencedLogoUrls(Set<String> urls) {
+        List<Criteria> anyField = new ArrayList<>();
+        for (String field : LOGO_URL_FIELDS) {
+            anyField.add(Criteria.where(field).in(urls));
+        }
+        Query query = new Query(new Criteria().orOperator(anyField));
+        LOGO_URL_FIELDS.forEach(field -> query.fields().include(field));
+
+        Set<String> referenced = new HashSet<>();
+        for (CompanyInfo companyInfo : mongoTemplate.find(query, CompanyInfo.class)) {
+            referenced.add(companyInfo.getCompanyLogoUrl());
+            referenced.add(companyInfo.getCompanyLogoThumbnailUrl());
+            referenced.add(companyInfo.getCompanyLogoPdfUrl());
+            referenced.add(companyInfo.getCompanyLogoWebpUrl());
+        }
+        return referenced;
+    }
+
+    /**
+     * Flat files from before the content-addressed layout: "file_"/"pdf_" downloads by age,
+     * "logo_" files when no company references them. Files found worth keeping are skipped
+     * until the directory has been walked once, so each run examines new entries.
+     */
+    private void sweepLegacyFiles() throws IOException {
+        Instant now = Instant.now();
+        Duration downloadTtl = categoryTtls.get("email-link");
+        Map<String, String> logoCandidates = new HashMap<>();
+        int examined = 0;
+        boolean exhausted = true;
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(uploadDirectory, "{file_,pdf_,logo_}*")) {
+            for (Path path : entries) {
+                String name = path.getFileName().toString();
+                if (legacyKept.contains(name)) {
+                    continue;
+                }
+                if (examined++ >= batchSize) {
+                    exhausted = false;
+                    break;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                Duration age = Duration.between(attributes.lastModifiedTime().toInstant(), now);
+                if (!attributes.isRegularFile()) {
+                    legacyKept.add(name);
+                } else if (name.startsWith("logo_")) {
+                    if (age.compareTo(orphanGrace) > 0) {
+                        logoCandidates.put(fileStorageService.toUrl(name), name);
+                    } else {
+                        legacyKept.add(name);
+                    }
+                } else if (downloadTtl != null && age.compareTo(downloadTtl) > 0) {
+                    deleteLegacy(name, "legacy-download");
+                } else {
+                    legacyKept.add(name);
+                }
+            }
+        }
+
+        if (!logoCandidates.isEmpty()) {
+            Set<String> referenced = referencedLogoUrls(logoCandidates.keySet());
+            for (Map.Entry<String, String> entry : logoCandidates.entrySet()) {
+                if (referenced.contains(entry.getKey())) {
+                    legacyKept.add(entry.getValue());
+                } else {
+                    deleteLegacy(entry.getValue(), "legacy-logo");
+                }
+            }
+        }
+        if (exhausted) {
+            legacyKept.clear();
+        }
+    }
+
+    private void sweepStaleTempFiles() throws IOException {
+        Path tempDir = uploadDirectory.resolve(".tmp");
+        if (!Files.isDirectory(tempDir)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(STALE_TEMP_AGE);
+        int removed = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(tempDir, "*.part")) {
+            for (Path path : entries) {
+                if (removed >= batchSize) {
+                    break;
+                }
+                if (Files.getLastModifiedTime(path).toInstant().isBefore(cutoff) && Files.deleteIfExists(path)) {
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            meterRegistry.counter("file.retention.deleted", "reason", "stale-temp").increment(removed);
+        }
+    }
+
+    private void reclaim(String name, Criteria stillReclaimable, String reason) {
+        try {
+            if (fileStorageService.reclaim(name, stillReclaimable)) {
+                meterRegistry.counter("file.retention.deleted", "reason", reason).increment();
+                logger.debug("Deleted {} file {}", reason, name);
+                pace();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void deleteLegacy(String name, String reason) {
+        try {
+            if (fileStorageService.deleteLegacyFile(name)) {
+                meterRegistry.counter("file.retention.deleted", "reason", reason).increment();
+                logger.debug("Deleted {} file {}", reason, name);
+                pace();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void pace() {
+        if (pauseMillis > 0) {
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
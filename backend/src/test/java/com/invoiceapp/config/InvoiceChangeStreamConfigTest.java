@@ -0,0 +1,50 @@
+package com.invoiceapp.config;
+
+import com.invoiceapp.service.InvoiceChangeStreamListener;
+import com.invoiceapp.service.InvoiceEventPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InvoiceChangeStreamConfigTest {
+
+    private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+    private MessageListenerContainer container;
+
+    @AfterEach
+    void stop() {
+        if (container != null) {
+            container.stop();
+        }
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    void listenerStartsWatchingInvoices() {
+        taskScheduler.initialize();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        InvoiceChangeStreamListener listener = new InvoiceChangeStreamListener(mongoTemplate,
+                new InvoiceEventPublisher(new SimpleMeterRegistry(), true), taskScheduler,
+                "invoices", 60_000, 60_000, false);
+
+        container = new InvoiceChangeStreamConfig().invoiceChangeListenerContainer(mongoTemplate, listener);
+
+        assertTrue(container.isRunning());
+        // The stream task only opens its cursor once the container runs it
+        verify(mongoTemplate, timeout(5_000)).getDb();
+    }
+}
@@ -0,0 +1,69 @@
+package com.invoiceapp.config;
+
+import com.invoiceapp.controller.UploadsController;
+import com.invoiceapp.service.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Local storage, so UploadsController stays out and /uploads is the static mapping from WebConfig
+@WebMvcTest(controllers = UploadsController.class)
+@Import(SecurityConfig.class)
+@TestPropertySource(properties = {"storage.backend=local", "file.upload-dir=" + SecurityConfigTest.UPLOAD_DIR})
+class SecurityConfigTest {
+
+    static final String UPLOAD_DIR = "target/security-test-uploads";
+
+    private static final String PDF = "/uploads/ab/cd/abcd1234.pdf";
+    private static final String IMAGE = "/uploads/ab/cd/abcd1234.png";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean(name = "pdfRenderExecutor")
+    private ThreadPoolTaskExecutor pdfRenderExecutor;
+
+    @BeforeEach
+    void createFiles() throws Exception {
+        for (String url : new String[] {PDF, IMAGE}) {
+            Path file = Path.of(UPLOAD_DIR, url.substring("/uploads/".length()));
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[] {1, 2, 3});
+        }
+    }
+
+    @Test
+    void pdfIsDeniedByPlainPath() throws Exception {
+        mockMvc.perform(get(PDF)).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void pdfIsDeniedWithQueryString() throws Exception {
+        mockMvc.perform(get(PDF + "?x=1")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void pdfIsDeniedWhateverTheCase() throws Exception {
+        mockMvc.perform(get("/uploads/ab/cd/abcd1234.PDF?x=1")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void imagesStayPublic() throws Exception {
+        mockMvc.perform(get(IMAGE + "?x=1")).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,92 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceDTO;
+import com.invoiceapp.entity.ServiceItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Per-email rendering cost of the email templates: time and heap allocated per body, model
+ * building included, as paid by every send. Lives with the test sources so it is not packaged,
+ * and runs without the application context:
+ *
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.invoiceapp.service.EmailTemplateBenchmark -Dexec.args="200000"
+ *
+ * Arguments: measured iterations (default 200000) and warm-up iterations (default 50000).
+ * Bytes per email are reported as -1 on JVMs without per-thread allocation counters.
+ */
+public final class EmailTemplateBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailTemplateBenchmark.class);
+
+    private static long sink;
+
+    private EmailTemplateBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        EmailTemplateService templates = new EmailTemplateService(List.of("en"));
+
+        InvoiceDTO small = sampleInvoice(5);
+        InvoiceDTO large = sampleInvoice(50);
+        logger.info(String.format("%-20s %12s %14s %12s", "template", "ns/email", "bytes/email", "html chars"));
+        run("invoice, 5 lines", iterations, warmup, () -> templates.render(EmailTemplateService.INVOICE,
+                EmailTemplateService.invoiceModel(small)));
+        run("invoice, 50 lines", iterations, warmup, () -> templates.render(EmailTemplateService.INVOICE,
+                EmailTemplateService.invoiceModel(large)));
+        run("download link", iterations, warmup, () -> templates.render(EmailTemplateService.DOWNLOAD_LINK,
+                EmailTemplateService.downloadLinkModel(small,
+                        "https://invoices.example.com/api/files/signed/ab/cd/file.pdf?exp=1700000000&sig=abc", 7,
+                        "Invoice System")));
+        logger.debug("Checksum {}", sink);
+    }
+
+    private static void run(String label, int iterations, int warmup, Supplier<String> render) {
+        for (int i = 0; i < warmup; i++) {
+            sink += render.get().length();
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        int length = 0;
+        for (int i = 0; i < iterations; i++) {
+            length = render.get().length();
+            sink += length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedBytes() - allocatedBefore) / iterations;
+        logger.info(String.format("%-20s %12d %14d %12d", label, elapsed / iterations, allocated, length));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean hotspot) {
+            return hotspot.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static InvoiceDTO sampleInvoice(int lines) {
+        List<ServiceItem> services = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            ServiceItem item = new ServiceItem();
+            item.setDescription("Consulting <phase " + (i + 1) + "> & review");
+            item.setHours(7.5 + i);
+            item.setRate(95.0);
+            services.add(item);
+        }
+        InvoiceDTO invoice = new InvoiceDTO();
+        invoice.setInvoiceNumber("INV-2024-0042");
+        invoice.setEmployeeName("Jane O'Neil");
+        invoice.setEmployeeEmail("jane@example.com");
+        invoice.setServices(services);
+        invoice.setTaxRate(18.0);
+        return invoice;
+    }
+}
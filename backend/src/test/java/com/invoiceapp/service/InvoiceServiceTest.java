@@ -0,0 +1,215 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.InvoiceEvent;
+import com.invoiceapp.dto.ServiceLinePage;
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.ServiceItem;
+import com.invoiceapp.repository.InvoiceRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs InvoiceService against a stored invoice document. There is no database here, so
+ * findAndModify and the line-page aggregation are answered in memory, but queries, updates
+ * and projections go through Spring Data's real mapping first, as on the way to MongoDB.
+ */
+class InvoiceServiceTest {
+
+    private static final String TENANT = "tenant-1";
+    private static final String INVOICE_ID = "invoice-1";
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final InvoiceEventPublisher invoiceEventPublisher = mock(InvoiceEventPublisher.class);
+    private final InvoiceService invoiceService = new InvoiceService();
+
+    private MappingMongoConverter converter;
+    private QueryMapper queryMapper;
+    private UpdateMapper updateMapper;
+    private MongoPersistentEntity<?> invoiceEntity;
+    private Document stored;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        queryMapper = new QueryMapper(converter);
+        updateMapper = new UpdateMapper(converter);
+        invoiceEntity = mappingContext.getRequiredPersistentEntity(Invoice.class);
+
+        Invoice invoice = new Invoice();
+        invoice.setId(INVOICE_ID);
+        invoice.setTenantId(TENANT);
+        invoice.setServices(new ArrayList<>(List.of(
+                new ServiceItem("line-1", "Design", 2.0, 100.0),
+                new ServiceItem("line-2", "Build", 10.0, 80.0))));
+        invoice.setVersion(3L);
+        stored = new Document();
+        converter.write(invoice, stored);
+
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Invoice.class)))
+                .thenAnswer(call -> findAndModify(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Invoice.class), eq(Document.class)))
+                .thenAnswer(call -> serviceLineSlice(call.getArgument(0)));
+
+        ReflectionTestUtils.setField(invoiceService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(invoiceService, "invoiceRepository", mock(InvoiceRepository.class));
+        ReflectionTestUtils.setField(invoiceService, "invoiceEventPublisher", invoiceEventPublisher);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(TENANT, null, List.of()));
+    }
+
+    @AfterEach
+    void clearAuthentication() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void updateServiceLineReturnsAndStoresTheChangedLine() {
+        ServiceItem changes = new ServiceItem();
+        changes.setHours(12.5);
+
+        ServiceItem updated = invoiceService.updateServiceLine(INVOICE_ID, "line-2", changes);
+
+        assertEquals("line-2", updated.getId());
+        assertEquals("Build", updated.getDescription());
+        assertEquals(12.5, updated.getHours());
+        assertEquals(80.0, updated.getRate());
+
+        Invoice reloaded = converter.read(Invoice.class, stored);
+        assertEquals(12.5, reloaded.getServices().get(1).getHours());
+        assertEquals(2.0, reloaded.getServices().get(0).getHours());
+        assertEquals(4L, reloaded.getVersion());
+        verify(invoiceEventPublisher).publishLocal(InvoiceEvent.Type.UPDATED, INVOICE_ID, null, TENANT);
+    }
+
+    @Test
+    void serviceLinePageReturnsTheRequestedSlice() {
+        ServiceLinePage page = invoiceService.getServiceLines(INVOICE_ID, 1, 1);
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("line-2", page.getItems().get(0).getId());
+        assertEquals(2, page.getTotalItems());
+    }
+
+    @Test
+    void serviceLinePageFarPastTheEndIsEmpty() {
+        // page * size overflows int to 0 here
+        ServiceLinePage page = invoiceService.getServiceLines(INVOICE_ID, 1 << 30, 4);
+
+        assertTrue(page.getItems().isEmpty());
+        assertEquals(2, page.getTotalItems());
+    }
+
+    /**
+     * The service-line page pipeline: the stored services array cut with its
+     * {$slice: [array, skip, n]} (a negative skip counts from the end) plus the line count.
+     */
+    @SuppressWarnings("unchecked")
+    private AggregationResults<Document> serviceLineSlice(Aggregation aggregation) {
+        Document project = aggregation.toPipeline(Aggregation.DEFAULT_CONTEXT).get(1).get("$project", Document.class);
+        List<Object> slice = project.get("items", Document.class).getList("$slice", Object.class);
+        int skip = ((Number) slice.get(1)).intValue();
+        int count = ((Number) slice.get(2)).intValue();
+        List<Document> services = (List<Document>) stored.get("services");
+        int from = skip < 0 ? Math.max(0, services.size() + skip) : Math.min(skip, services.size());
+        List<Document> items = services.subList(from, Math.min(services.size(), from + count));
+        Document result = new Document("_id", INVOICE_ID).append("items", items).append("totalItems", services.size());
+        return new AggregationResults<>(List.of(result), new Document());
+    }
+
+    /**
+     * The subset of findAndModify the service-line operations use: equality filters (with the
+     * positional match on an array element), $set with the positional operator, $inc, and an
+     * optional $elemMatch projection of one array.
+     */
+    @SuppressWarnings("unchecked")
+    private Invoice findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options) {
+        Document filter = queryMapper.getMappedObject(query.getQueryObject(), invoiceEntity);
+        int position = -1;
+        for (Map.Entry<String, Object> condition : filter.entrySet()) {
+            int dot = condition.getKey().indexOf('.');
+            if (dot < 0) {
+                if (!condition.getValue().equals(stored.get(condition.getKey()))) {
+                    return null;
+                }
+                continue;
+            }
+            List<Document> elements = (List<Document>) stored.get(condition.getKey().substring(0, dot));
+            String field = condition.getKey().substring(dot + 1);
+            position = -1;
+            for (int i = 0; i < elements.size() && position < 0; i++) {
+                if (condition.getValue().equals(elements.get(i).get(field))) {
+                    position = i;
+                }
+            }
+            if (position < 0) {
+                return null;
+            }
+        }
+
+        Document before = Document.parse(stored.toJson());
+        Document mapped = updateMapper.getMappedObject(update.getUpdateObject(), invoiceEntity);
+        for (Map.Entry<String, Object> set : ((Document) mapped.getOrDefault("$set", new Document())).entrySet()) {
+            String[] path = set.getKey().split("\\.");
+            if (path.length == 3 && "$".equals(path[1])) {
+                ((List<Document>) stored.get(path[0])).get(position).put(path[2], set.getValue());
+            } else {
+                stored.put(set.getKey(), set.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> inc : ((Document) mapped.getOrDefault("$inc", new Document())).entrySet()) {
+            stored.put(inc.getKey(), ((Number) stored.get(inc.getKey())).longValue() + ((Number) inc.getValue()).longValue());
+        }
+
+        Document result = Document.parse((options.isReturnNew() ? stored : before).toJson());
+        Document fields = queryMapper.getMappedFields(query.getFieldsObject(), invoiceEntity);
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (field.getValue() instanceof Document projection && projection.containsKey("$elemMatch")) {
+                Map.Entry<String, Object> match = ((Document) projection.get("$elemMatch")).entrySet().iterator().next();
+                List<Document> matched = ((List<Document>) result.get(field.getKey())).stream()
+                        .filter(element -> match.getValue().equals(element.get(match.getKey())))
+                        .limit(1)
+                        .toList();
+                result = new Document("_id", result.get("_id")).append(field.getKey(), matched);
+            }
+        }
+        return converter.read(Invoice.class, result);
+    }
+}